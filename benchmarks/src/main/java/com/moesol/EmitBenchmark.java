@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Emit throughput of the property accessors of a {@link SyntheticModel}, with
+ * the compiled {@link CodeTemplate}s of a reused {@link CodeWriter} and with
+ * PrintStream.printf into a new stream per class, the way overlays were
+ * written before. Each operation renders the getters and setters of one class,
+ * the properties counter reports the rate in properties per second.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmitBenchmark {
+
+    private static final String PATH = SyntheticModel.PACKAGE.replace('.', '/') + "/";
+
+    @Param({"200"})
+    public int classes;
+    @Param({"10", "40"})
+    public int properties;
+
+    private File root;
+    private URLClassLoader loader;
+    private JavaScriptOverlayGenerator generator;
+    private List<List<PropertyModel>> beans;
+
+    @Setup
+    public void setup() throws Exception {
+        root = File.createTempFile("js-overlay-emit", "");
+        root.delete();
+        SyntheticModel model = new SyntheticModel(root, classes, properties, 3, 0.2, 0.1);
+        model.build();
+        loader = new URLClassLoader(new URL[]{model.getClassesDirectory().toURI().toURL()}, EmitBenchmark.class.getClassLoader());
+        Config config = new Config();
+        config.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+            }
+        });
+        config.setSourcePackage(SyntheticModel.PACKAGE);
+        config.setOutputDirectory(new File(root, "out").getPath());
+        generator = new JavaScriptOverlayGenerator(config);
+        generator.setLoader(loader);
+        List<ClassInfo> classInfos = generator.processDirectory(PATH, new File(root, "out"));
+        // one run sets the top package and warms the type caches the emit path reads
+        generator.writeJso(classInfos);
+        beans = new ArrayList<List<PropertyModel>>();
+        for (ClassInfo ci : classInfos) {
+            if (!ci.getModel().isEnum()) {
+                List<PropertyModel> bean = new ArrayList<PropertyModel>();
+                for (PropertyModel property : generator.getIntrospector().getProperties(ci.getModel())) {
+                    bean.add(property);
+                }
+                beans.add(bean);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        loader.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    /**
+     * Counts the properties rendered, reported as a rate
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long properties;
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            properties = 0;
+        }
+    }
+
+    @Benchmark
+    public void templates(Counters counters, Blackhole bh) throws Exception {
+        emit(CodeWriter.forThread(), counters, bh);
+    }
+
+    @Benchmark
+    public void printf(Counters counters, Blackhole bh) throws Exception {
+        emit(new PrintStreamWriter(), counters, bh);
+    }
+
+    private void emit(CodeWriter out, Counters counters, Blackhole bh) throws IOException {
+        List<PropertyModel> bean = beans.get(counters.next++ % beans.size());
+        for (PropertyModel property : bean) {
+            generator.writeReadFunction(property.getReadMethod(), out);
+            generator.writeWriteFunction(property.getWriteMethod(), out);
+        }
+        bh.consume(out.toBytes());
+        counters.properties += bean.size();
+    }
+
+    /**
+     * Renders through PrintStream.printf, which parses every format string on each call
+     */
+    private static class PrintStreamWriter extends CodeWriter {
+
+        private final ByteArrayOutputStream bos = new ByteArrayOutputStream(8192);
+        private final PrintStream ps = new PrintStream(bos);
+
+        @Override
+        void printf(String pattern, Object... args) {
+            ps.printf(pattern, args);
+        }
+
+        @Override
+        void print(String text) {
+            ps.print(text);
+        }
+
+        @Override
+        byte[] toBytes() {
+            ps.flush();
+            return bos.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the stages of the generator on a {@link SyntheticModel}.
+ * Each benchmark starts from a new generator so nothing is cached between
+ * operations, except writeJso which reuses the class models read in setup
+ * the same way a run reuses the models read by the scan.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    private static final String PATH = SyntheticModel.PACKAGE.replace('.', '/') + "/";
+
+    @Param({"100", "1000"})
+    public int classes;
+    @Param({"10"})
+    public int properties;
+    @Param({"3"})
+    public int depth;
+    @Param({"0.2"})
+    public double collectionRatio;
+    @Param({"0.1"})
+    public double enumRatio;
+
+    private File root;
+    private URLClassLoader directoryLoader;
+    private URLClassLoader jarLoader;
+    private List<ClassInfo> classInfos;
+    private List<Class<?>> beanClasses;
+    private JavaScriptOverlayGenerator generator;
+
+    @Setup
+    public void setup() throws Exception {
+        root = File.createTempFile("js-overlay-bench", "");
+        root.delete();
+        SyntheticModel model = new SyntheticModel(root, classes, properties, depth, collectionRatio, enumRatio);
+        model.build();
+        ClassLoader parent = GeneratorBenchmark.class.getClassLoader();
+        directoryLoader = new URLClassLoader(new URL[]{model.getClassesDirectory().toURI().toURL()}, parent);
+        jarLoader = new URLClassLoader(new URL[]{model.getJar().toURI().toURL()}, parent);
+
+        generator = createGenerator(directoryLoader);
+        classInfos = generator.processDirectory(PATH, getOutputDirectory());
+        beanClasses = new ArrayList<Class<?>>();
+        for (ClassInfo ci : classInfos) {
+            if (!ci.getModel().isEnum()) {
+                beanClasses.add(Class.forName(ci.getOriginalName(), false, directoryLoader));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        directoryLoader.close();
+        jarLoader.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    private File getOutputDirectory() {
+        return new File(root, "out");
+    }
+
+    private JavaScriptOverlayGenerator createGenerator(ClassLoader loader) {
+        Config config = new Config();
+        config.setLog(new QuietLog());
+        config.setSourcePackage(SyntheticModel.PACKAGE);
+        config.setOutputDirectory(getOutputDirectory().getPath());
+        JavaScriptOverlayGenerator gen = new JavaScriptOverlayGenerator(config);
+        gen.setLoader(loader);
+        return gen;
+    }
+
+    @Benchmark
+    public List<ClassInfo> processDirectory() throws Exception {
+        return createGenerator(directoryLoader).processDirectory(PATH, getOutputDirectory());
+    }
+
+    @Benchmark
+    public List<ClassInfo> processJar() throws Exception {
+        return createGenerator(jarLoader).processJar(getOutputDirectory());
+    }
+
+    /**
+     * Resolve the type of every getter with empty type caches
+     */
+    @Benchmark
+    public void getType(Blackhole bh) throws Exception {
+        TypeResolver resolver = new TypeResolver(generator.getResolver().getConfig(), generator.getRepository());
+        for (ClassInfo ci : classInfos) {
+            if (ci.getModel().isEnum()) {
+                continue;
+            }
+            for (PropertyModel property : generator.getIntrospector().getProperties(ci.getModel())) {
+                if (property.getReadMethod() != null) {
+                    bh.consume(resolver.getType(property.getReadMethod()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Introspect every bean, reading the class files
+     */
+    @Benchmark
+    public void getMethods(Blackhole bh) throws Exception {
+        JavaScriptOverlayGenerator gen = createGenerator(directoryLoader);
+        for (Class<?> cls : beanClasses) {
+            bh.consume(gen.getMethods(cls));
+        }
+    }
+
+    /**
+     * Generate every class. The manifest is removed so nothing is skipped as
+     * up to date, after the first operation the unchanged files are not rewritten.
+     */
+    @Benchmark
+    public void writeJso() throws Exception {
+        new File(getOutputDirectory(), GenerationManifest.FILE_NAME).delete();
+        generator.writeJso(classInfos);
+    }
+
+    /**
+     * Keeps the generator's info messages out of the benchmark output
+     */
+    private static class QuietLog extends SystemStreamLog {
+
+        @Override
+        public void info(CharSequence content) {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.util.concurrent.TimeUnit;
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the bodies of the generated eval methods, the native JSON.parse and the
+ * legacy RFC 4627 regex check followed by eval, on payloads of different sizes.
+ * The bodies run in the JDK's JavaScript engine (Nashorn, JDK 8 to 14) which is
+ * not a browser, but the relative cost of the extra regex pass carries over.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonParseBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int payloadKb;
+
+    private Invocable engine;
+    private String payload;
+
+    @Setup
+    public void setup() throws Exception {
+        ScriptEngine js = new ScriptEngineManager().getEngineByName("JavaScript");
+        if (js == null) {
+            throw new IllegalStateException("No JavaScript engine, run on a JDK with Nashorn");
+        }
+        js.eval("function nativeParse(jsonText) {" + JavaScriptOverlayGenerator.NATIVE_PARSE + "}");
+        js.eval("function legacyEval(jsonText) {" + JavaScriptOverlayGenerator.LEGACY_EVAL + "}");
+        engine = (Invocable) js;
+        payload = createPayload(payloadKb * 1024);
+    }
+
+    /**
+     * An array of small objects with strings, numbers, lists and nested objects
+     */
+    private static String createPayload(int size) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append('[');
+        for (int i = 0; sb.length() < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+                .append(",\"name\":\"item \\\"").append(i).append("\\\"\"")
+                .append(",\"active\":").append(i % 2 == 0)
+                .append(",\"values\":[").append(i * 0.5).append(',').append(i * 1.5e3).append(']')
+                .append(",\"tags\":[\"a\",\"b\\\\c\"]")
+                .append(",\"child\":{\"created\":\"2011-06-01T12:00:00Z\",\"color\":\"RED\"}}");
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    @Benchmark
+    public Object nativeParse() throws Exception {
+        return engine.invokeFunction("nativeParse", payload);
+    }
+
+    @Benchmark
+    public Object legacyEval() throws Exception {
+        return engine.invokeFunction("legacyEval", payload);
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Writes and compiles a package of generated POJOs for the benchmarks.
+ * There are {@code classes} beans with {@code properties} properties each.
+ * A bean refers to the next bean so references nest {@code depth} deep,
+ * and a share of the properties are lists or enums, the rest are simple types.
+ * The classes are compiled into a directory and also packed into a jar.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class SyntheticModel {
+
+    /**
+     * Package of the generated beans
+     */
+    public static final String PACKAGE = "com.moesol.bench.model";
+    private static final int ENUM_COUNT = 3;
+    private static final String[] SIMPLE_TYPES = {
+        "String", "int", "Integer", "double", "boolean", "Long", "java.util.Date"
+    };
+
+    private final File root;
+    private final int classes;
+    private final int properties;
+    private final int depth;
+    private final double collectionRatio;
+    private final double enumRatio;
+
+    /**
+     * Constructor
+     * @param root directory for the sources, classes and jar
+     * @param classes number of bean classes
+     * @param properties properties per bean
+     * @param depth length of the chains of beans that refer to the next bean
+     * @param collectionRatio share of the properties that are lists
+     * @param enumRatio share of the properties that are enums
+     */
+    public SyntheticModel(File root, int classes, int properties, int depth, double collectionRatio, double enumRatio) {
+        this.root = root;
+        this.classes = classes;
+        this.properties = properties;
+        this.depth = depth;
+        this.collectionRatio = collectionRatio;
+        this.enumRatio = enumRatio;
+    }
+
+    /**
+     * Write the sources, compile them and build the jar
+     * @throws IOException 
+     */
+    public void build() throws IOException {
+        File srcDir = new File(getSourceDirectory(), PACKAGE.replace('.', '/'));
+        srcDir.mkdirs();
+        getClassesDirectory().mkdirs();
+        List<String> files = new ArrayList<String>();
+        for (int e = 0; e < ENUM_COUNT; e++) {
+            files.add(writeEnum(srcDir, e));
+        }
+        for (int c = 0; c < classes; c++) {
+            files.add(writeBean(srcDir, c));
+        }
+        compile(files);
+        writeJar();
+    }
+
+    /**
+     * @return the directory the classes are compiled to
+     */
+    public File getClassesDirectory() {
+        return new File(root, "classes");
+    }
+
+    /**
+     * @return the jar with the compiled classes
+     */
+    public File getJar() {
+        return new File(root, "model.jar");
+    }
+
+    private File getSourceDirectory() {
+        return new File(root, "src");
+    }
+
+    private String writeEnum(File dir, int e) throws IOException {
+        File file = new File(dir, "Kind" + e + ".java");
+        PrintStream ps = new PrintStream(new FileOutputStream(file));
+        try {
+            ps.printf("package %s;%n", PACKAGE);
+            ps.printf("public enum Kind%d { A, B, C, D }%n", e);
+        } finally {
+            ps.close();
+        }
+        return file.getPath();
+    }
+
+    private String writeBean(File dir, int c) throws IOException {
+        File file = new File(dir, "Bean" + c + ".java");
+        PrintStream ps = new PrintStream(new FileOutputStream(file));
+        try {
+            ps.printf("package %s;%n", PACKAGE);
+            ps.printf("public class Bean%d {%n", c);
+            int collections = (int) Math.round(properties * collectionRatio);
+            int enums = (int) Math.round(properties * enumRatio);
+            for (int p = 0; p < properties; p++) {
+                String type;
+                if (p == 0 && depth > 1 && c % depth != depth - 1 && c + 1 < classes) {
+                    type = "Bean" + (c + 1);
+                } else if (p < collections) {
+                    type = p % 2 == 0 ? "java.util.List<String>" : "java.util.List<Bean" + ((c + p) % classes) + ">";
+                } else if (p < collections + enums) {
+                    type = "Kind" + (p % ENUM_COUNT);
+                } else {
+                    type = SIMPLE_TYPES[p % SIMPLE_TYPES.length];
+                }
+                ps.printf("  private %s value%d;%n", type, p);
+                ps.printf("  public %s getValue%d() { return value%d; }%n", type, p, p);
+                ps.printf("  public void setValue%d(%s value) { value%d = value; }%n", p, type, p);
+            }
+            ps.printf("}%n");
+        } finally {
+            ps.close();
+        }
+        return file.getPath();
+    }
+
+    private void compile(List<String> files) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("A JDK is needed to compile the benchmark model");
+        }
+        List<String> args = new ArrayList<String>();
+        args.add("-nowarn");
+        args.add("-d");
+        args.add(getClassesDirectory().getPath());
+        args.addAll(files);
+        if (compiler.run(null, null, null, args.toArray(new String[args.size()])) != 0) {
+            throw new IOException("Unable to compile the benchmark model");
+        }
+    }
+
+    private void writeJar() throws IOException {
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(getJar()));
+        try {
+            String path = "";
+            for (String part : PACKAGE.split("\\.")) {
+                path += part + "/";
+                jos.putNextEntry(new JarEntry(path));
+            }
+            File[] files = new File(getClassesDirectory(), PACKAGE.replace('.', '/')).listFiles();
+            for (File file : files) {
+                jos.putNextEntry(new JarEntry(path + file.getName()));
+                FileInputStream fis = new FileInputStream(file);
+                try {
+                    byte[] buf = new byte[4096];
+                    int n;
+                    while ((n = fis.read(buf)) != -1) {
+                        jos.write(buf, 0, n);
+                    }
+                } finally {
+                    fis.close();
+                }
+            }
+        } finally {
+            jos.close();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds the bean properties of classes read from class files.
+ * Produces the same properties as java.beans.Introspector with Object as the stop class:
+ * public non static getters and setters of the class and its super classes,
+ * an is getter wins over a get getter and a setter must take the type of the getter.
+ * Tables are cached for the life of the introspector instead of in a global cache.
+ * Safe to use from several threads.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class BeanIntrospector {
+
+    private static final Comparator<PropertyModel> BY_NAME = new Comparator<PropertyModel>() {
+        @Override
+        public int compare(PropertyModel o1, PropertyModel o2) {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    private final ClassRepository repository;
+    private final ConcurrentMap<String, PropertyTable> tables = new ConcurrentHashMap<String, PropertyTable>();
+
+    /**
+     * Constructor
+     * @param repository used to read the class and its super classes
+     */
+    public BeanIntrospector(ClassRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Same rules as java.beans.Introspector.decapitalize: the first character is
+     * lower cased unless the first two characters are both upper case.
+     * @param name
+     * @return 
+     */
+    public static String decapitalize(String name) {
+        if (name == null || name.length() == 0) {
+            return name;
+        }
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        char[] chars = name.toCharArray();
+        chars[0] = Character.toLowerCase(chars[0]);
+        return new String(chars);
+    }
+
+    /**
+     * @param className binary name of the class
+     * @return the properties of the class
+     * @throws IOException if the class file can not be read
+     * @throws ClassNotFoundException if there is no class file
+     */
+    public PropertyTable getProperties(String className) throws IOException, ClassNotFoundException {
+        PropertyTable table = tables.get(className);
+        if (table == null) {
+            ClassModel model = repository.get(className);
+            if (model == null) {
+                throw new ClassNotFoundException(className);
+            }
+            table = getProperties(model);
+        }
+        return table;
+    }
+
+    /**
+     * @param model
+     * @return the properties of the class
+     * @throws IOException if a super class file can not be read
+     */
+    public PropertyTable getProperties(ClassModel model) throws IOException {
+        PropertyTable table = tables.get(model.getName());
+        if (table == null) {
+            GenerationMetrics metrics = repository.getMetrics();
+            GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.INTROSPECT);
+            try {
+                table = introspect(model);
+            } finally {
+                metrics.exit(outer);
+            }
+            PropertyTable existing = tables.putIfAbsent(model.getName(), table);
+            if (existing != null) {
+                table = existing;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Use a table restored from the {@link ModelCache} instead of introspecting the class
+     * @param className binary name of the class
+     * @param table
+     * @return true if the table is used, false if the class was already introspected
+     */
+    boolean add(String className, PropertyTable table) {
+        return tables.putIfAbsent(className, table) == null;
+    }
+
+    /**
+     * Forget the table of a class that was generated
+     * @param className binary name of the class
+     * @return the table that was removed or null
+     */
+    PropertyTable remove(String className) {
+        return tables.remove(className);
+    }
+
+    private PropertyTable introspect(ClassModel model) throws IOException {
+        Map<String, MethodModel> getters = new HashMap<String, MethodModel>();
+        Map<String, List<MethodModel>> setters = new HashMap<String, List<MethodModel>>();
+        // methods of sub classes override the same method of a super class
+        Set<String> seen = null;
+        Map<String, MethodModel> declared = getters;
+        for (ClassModel cm = model; cm != null && cm.getSuperName() != null; cm = repository.get(cm.getSuperName())) {
+            boolean hasSuper = !"java.lang.Object".equals(cm.getSuperName());
+            if (hasSuper && seen == null) {
+                seen = new HashSet<String>();
+            }
+            if (cm != model) {
+                declared = new HashMap<String, MethodModel>();
+            }
+            for (MethodModel method : cm.getMethods()) {
+                if (!method.isBeanCandidate()) {
+                    continue;
+                }
+                if (seen != null && !seen.add(method.getName() + method.getDescriptor())) {
+                    continue;
+                }
+                addAccessor(method, declared, setters);
+            }
+            // the getter of a sub class wins, also over a super class getter with another return type
+            if (declared != getters) {
+                for (Map.Entry<String, MethodModel> entry : declared.entrySet()) {
+                    if (!getters.containsKey(entry.getKey())) {
+                        getters.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        }
+
+        List<PropertyModel> properties = new ArrayList<PropertyModel>(getters.size() + setters.size());
+        for (Map.Entry<String, MethodModel> entry : getters.entrySet()) {
+            MethodModel setter = null;
+            List<MethodModel> list = setters.get(entry.getKey());
+            if (list != null) {
+                String type = entry.getValue().getReturnDescriptor();
+                for (MethodModel candidate : list) {
+                    if (type.equals(candidate.getFirstParameterDescriptor())) {
+                        setter = candidate;
+                        break;
+                    }
+                }
+            }
+            properties.add(new PropertyModel(entry.getKey(), entry.getValue(), setter));
+        }
+        for (Map.Entry<String, List<MethodModel>> entry : setters.entrySet()) {
+            if (!getters.containsKey(entry.getKey())) {
+                properties.add(new PropertyModel(entry.getKey(), null, entry.getValue().get(0)));
+            }
+        }
+        PropertyModel[] array = properties.toArray(new PropertyModel[properties.size()]);
+        Arrays.sort(array, BY_NAME);
+        return new PropertyTable(array);
+    }
+
+    private static void addAccessor(MethodModel method, Map<String, MethodModel> getters, Map<String, List<MethodModel>> setters) {
+        String name = method.getName();
+        String returnType = method.getReturnDescriptor();
+        boolean noArgs = method.getDescriptor().startsWith("()");
+        if (noArgs && name.length() > 3 && name.startsWith("get") && !"V".equals(returnType)) {
+            String property = decapitalize(name.substring(3));
+            MethodModel existing = getters.get(property);
+            if (existing == null || !existing.getName().startsWith("is")) {
+                getters.put(property, method);
+            }
+        } else if (noArgs && name.length() > 2 && name.startsWith("is") && "Z".equals(returnType)) {
+            getters.put(decapitalize(name.substring(2)), method);
+        } else if (!noArgs && name.length() > 3 && name.startsWith("set") && "V".equals(returnType)
+            && method.getParameterCount() == 1) {
+            String property = decapitalize(name.substring(3));
+            List<MethodModel> list = setters.get(property);
+            if (list == null) {
+                list = new ArrayList<MethodModel>(1);
+                setters.put(property, list);
+            }
+            list.add(method);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reads a class file into a {@link ClassModel} without loading the class.
+ * Only the parts of the class file needed to generate overlays are kept:
+ * the class header, public methods with their generic signatures, enum
+ * constants and the class level runtime annotations.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class ClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_ENUM = 0x4000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final byte[] bytes;
+    private final DataInputStream in;
+    private String[] utf8;
+    private int[] classNameIndex;
+
+    private ClassFileReader(byte[] bytes) {
+        this.bytes = bytes;
+        in = new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Parse the bytes of a class file
+     * @param bytes
+     * @return the model of the class
+     * @throws IOException if the bytes are not a valid class file
+     */
+    public static ClassModel read(byte[] bytes) throws IOException {
+        return new ClassFileReader(bytes).read();
+    }
+
+    /**
+     * Hex SHA-1 digest of some bytes
+     * @param bytes
+     * @return 
+     */
+    public static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // every JRE is required to support SHA-1
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Read a stream fully and close it.
+     * @param is
+     * @return
+     * @throws IOException
+     */
+    public static byte[] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(4096);
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) != -1) {
+                bos.write(buf, 0, n);
+            }
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    private ClassModel read() throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor
+        in.readUnsignedShort(); // major
+        readConstantPool();
+        int access = in.readUnsignedShort();
+        String name = getClassName(in.readUnsignedShort());
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? null : getClassName(superIndex);
+        int interfaceCount = in.readUnsignedShort();
+        String[] interfaces = new String[interfaceCount];
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces[i] = getClassName(in.readUnsignedShort());
+        }
+        ClassModel model = new ClassModel(name, superName, interfaces, access);
+        model.setHash(hash(bytes));
+
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            int fieldAccess = in.readUnsignedShort();
+            String fieldName = utf8[in.readUnsignedShort()];
+            in.readUnsignedShort(); // descriptor
+            if ((fieldAccess & ACC_ENUM) != 0) {
+                model.addEnumConstant(fieldName);
+            }
+            skipAttributes();
+        }
+
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            int methodAccess = in.readUnsignedShort();
+            String methodName = utf8[in.readUnsignedShort()];
+            String descriptor = utf8[in.readUnsignedShort()];
+            String signature = null;
+            int attributeCount = in.readUnsignedShort();
+            for (int a = 0; a < attributeCount; a++) {
+                String attributeName = utf8[in.readUnsignedShort()];
+                int length = in.readInt();
+                if ("Signature".equals(attributeName)) {
+                    signature = utf8[in.readUnsignedShort()];
+                } else {
+                    skip(length);
+                }
+            }
+            model.addMethod(new MethodModel(methodName, methodAccess, descriptor, signature));
+        }
+
+        int attributeCount = in.readUnsignedShort();
+        for (int a = 0; a < attributeCount; a++) {
+            String attributeName = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("RuntimeVisibleAnnotations".equals(attributeName)) {
+                int annotationCount = in.readUnsignedShort();
+                for (int i = 0; i < annotationCount; i++) {
+                    model.addAnnotation(readAnnotation());
+                }
+            } else {
+                skip(length);
+            }
+        }
+        return model;
+    }
+
+    private void readConstantPool() throws IOException {
+        int count = in.readUnsignedShort();
+        utf8 = new String[count];
+        classNameIndex = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndex[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    skip(2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    skip(3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    skip(4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    skip(8);
+                    i++; // takes two slots
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+    }
+
+    /**
+     * Read one annotation and return the binary name of its type.
+     * The element values are skipped.
+     */
+    private String readAnnotation() throws IOException {
+        String type = utf8[in.readUnsignedShort()];
+        int pairCount = in.readUnsignedShort();
+        for (int i = 0; i < pairCount; i++) {
+            in.readUnsignedShort(); // element name
+            skipElementValue();
+        }
+        // Lcom/foo/Bar; -> com.foo.Bar
+        return type.substring(1, type.length() - 1).replace('/', '.');
+    }
+
+    private void skipElementValue() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                skip(4);
+                break;
+            case '@':
+                readAnnotation();
+                break;
+            case '[':
+                int count = in.readUnsignedShort();
+                for (int i = 0; i < count; i++) {
+                    skipElementValue();
+                }
+                break;
+            default:
+                // const_value_index or class_info_index
+                skip(2);
+        }
+    }
+
+    private void skipAttributes() throws IOException {
+        int attributeCount = in.readUnsignedShort();
+        for (int a = 0; a < attributeCount; a++) {
+            in.readUnsignedShort();
+            skip(in.readInt());
+        }
+    }
+
+    private void skip(int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new IOException("Truncated class file");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private String getClassName(int index) {
+        return utf8[classNameIndex[index]].replace('/', '.');
+    }
+}
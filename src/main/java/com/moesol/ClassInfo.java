@@ -27,6 +27,7 @@ public class ClassInfo {
     private String className;
     private String origClassName;
     private Config config;
+    private volatile ClassModel model;
 
     /**
      * Constructor
@@ -57,16 +58,11 @@ public class ClassInfo {
         className = clsName.replace("-", "_").replace("$", "_");
     }
     /**
-     * Gets the package name by replacing config.oldPackage with config.newPackage if set.
-     * @param packageName
+     * Gets the package name by applying the package renames of the config.
      * @return
      */
     public String getNewPackageName() {
-        String pak = getPckageName();
-        if (getConfig().getOldPackage() != null && getConfig().getNewPackage() != null) {
-            pak = pak.replaceAll(getConfig().getOldPackage(), getConfig().getNewPackage());
-        }
-        return pak;
+        return getConfig().getPackageMapper().map(getPckageName());
     }
 
     /**
@@ -83,19 +79,29 @@ public class ClassInfo {
      * @throws ClassNotFoundException 
      */
     public File getOutputFile() throws ClassNotFoundException {
-        if(getOriginalClass().isEnum()){
+        if(model != null && model.isEnum()){
             return new File(getOutputDirectory(), getClassName() + ".java");
         }
         return new File(getOutputDirectory(), getClassName() + "Jso.java");
     }
 
     /**
-     * The source class being generated
+     * The source class being generated.
+     * The class is loaded from the loader of the config but not initialized,
+     * the generator itself only uses {@link #getModel()}.
      * @return
      * @throws ClassNotFoundException 
      */
     public Class getOriginalClass() throws ClassNotFoundException {
-        return Class.forName(getOriginalPackage() + "." + getOrigClassName());
+        return Class.forName(getOriginalName(), false, config.getClassLoader());
+    }
+
+    /**
+     * The binary name of the source class
+     * @return 
+     */
+    public String getOriginalName() {
+        return getOriginalPackage() + "." + getOrigClassName();
     }
 
     /**
@@ -155,5 +161,19 @@ public class ClassInfo {
     public void setConfig(Config config) {
         this.config = config;
 }
+
+    /**
+     * @return the class file model, null until the class has been read
+     */
+    public ClassModel getModel() {
+        return model;
+    }
+
+    /**
+     * @param model the class file model of the source class
+     */
+    public void setModel(ClassModel model) {
+        this.model = model;
+    }
     
 }
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The parts of a class file used to generate an overlay.
+ * Created by {@link ClassFileReader} so the class never has to be loaded.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class ClassModel {
+
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ENUM = 0x4000;
+    private static final String XML_ROOT_ELEMENT = "javax.xml.bind.annotation.XmlRootElement";
+
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+    private final int access;
+    private final List<MethodModel> methods = new ArrayList<MethodModel>();
+    private final List<String> enumConstants = new ArrayList<String>();
+    private final Set<String> annotations = new HashSet<String>();
+    private String hash;
+    private boolean header;
+
+    /**
+     * Constructor
+     * @param name binary name of the class, e.g. com.foo.Outer$Inner
+     * @param superName binary name of the super class or null
+     * @param interfaces binary names of the directly implemented interfaces
+     * @param access class access flags
+     */
+    public ClassModel(String name, String superName, String[] interfaces, int access) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.access = access;
+    }
+
+    void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * @return a copy with only the class header and hash, without methods, enum constants or annotations
+     */
+    ClassModel toHeader() {
+        ClassModel copy = new ClassModel(name, superName, interfaces, access);
+        copy.hash = hash;
+        copy.header = true;
+        return copy;
+    }
+
+    /**
+     * @return true if this is only the header of a class, see {@link #toHeader()}
+     */
+    boolean isHeader() {
+        return header;
+    }
+
+    void addMethod(MethodModel method) {
+        methods.add(method);
+    }
+
+    void addEnumConstant(String constant) {
+        enumConstants.add(constant);
+    }
+
+    void addAnnotation(String annotation) {
+        annotations.add(annotation);
+    }
+
+    /**
+     * @return the binary name of the class
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the SHA-1 of the class file the model was read from
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return the binary name of the super class, null for java.lang.Object
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * @return the binary names of the directly implemented interfaces
+     */
+    public String[] getInterfaces() {
+        return interfaces.clone();
+    }
+
+    /**
+     * True if the class directly implements the interface
+     * @param interfaceName binary name of the interface
+     * @return 
+     */
+    public boolean hasInterface(String interfaceName) {
+        for (String i : interfaces) {
+            if (i.equals(interfaceName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same rule as {@link Class#isEnum()}, constant specific class bodies are not enums.
+     * @return true if this is an enum type
+     */
+    public boolean isEnum() {
+        return (access & ACC_ENUM) != 0 && "java.lang.Enum".equals(superName);
+    }
+
+    /**
+     * @return true if this is an interface
+     */
+    public boolean isInterface() {
+        return (access & ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * @return the enum constants in declaration order
+     */
+    public List<String> getEnumConstants() {
+        return Collections.unmodifiableList(enumConstants);
+    }
+
+    /**
+     * @return the methods declared by this class
+     */
+    public List<MethodModel> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+    /**
+     * @param annotation binary name of the annotation type
+     * @return true if the class has the runtime annotation
+     */
+    public boolean hasAnnotation(String annotation) {
+        return annotations.contains(annotation);
+    }
+
+    /**
+     * @return true if the class is annotated with XmlRootElement
+     */
+    public boolean isRootElement() {
+        return hasAnnotation(XML_ROOT_ELEMENT);
+    }
+}
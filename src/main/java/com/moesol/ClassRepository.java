@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Finds {@link ClassModel}s by reading class files as resources of a class loader.
+ * Classes are never loaded or initialized. Models are kept for the life of
+ * the repository, which is one generator run, except for classes that were
+ * {@link #evict(String) evicted} once generated: only their header is kept,
+ * so memory does not grow with the methods of every class in the run.
+ * Safe to use from several threads.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class ClassRepository {
+
+    /**
+     * Stored for classes that have no class file
+     */
+    private static final ClassModel MISSING = new ClassModel("", null, new String[0], 0);
+
+    private final ClassLoader loader;
+    private final GenerationMetrics metrics;
+    /**
+     * Parsed models by binary name
+     */
+    private final ConcurrentMap<String, ClassModel> models = new ConcurrentHashMap<String, ClassModel>();
+
+    /**
+     * Constructor
+     * @param loader used to find class files
+     */
+    public ClassRepository(ClassLoader loader) {
+        this(loader, new GenerationMetrics());
+    }
+
+    /**
+     * Constructor
+     * @param loader used to find class files
+     * @param metrics times the reading of class files, shared with the users of the repository
+     */
+    public ClassRepository(ClassLoader loader, GenerationMetrics metrics) {
+        this.loader = loader;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the metrics of the run
+     */
+    public GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Add a model that was read while scanning
+     * @param model 
+     */
+    public void add(ClassModel model) {
+        models.put(model.getName(), model);
+    }
+
+    /**
+     * Get the model of a class, reading its class file if needed.
+     * @param name binary name of the class
+     * @return the model or null if there is no class file
+     * @throws IOException if the class file can not be read
+     */
+    public ClassModel get(String name) throws IOException {
+        ClassModel model = models.get(name);
+        if (model != null && model.isHeader()) {
+            // evicted, read again for this caller without keeping the methods
+            model = read(name);
+        } else if (model == null) {
+            model = read(name);
+            // another thread may have read it first, keep a single model
+            ClassModel existing = models.putIfAbsent(name, model);
+            if (existing != null && !existing.isHeader()) {
+                model = existing;
+            }
+        }
+        return model == MISSING ? null : model;
+    }
+
+    private ClassModel read(String name) throws IOException {
+        GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.READ);
+        try {
+            InputStream is = loader.getResourceAsStream(name.replace('.', '/') + ".class");
+            return is == null ? MISSING : ClassFileReader.read(ClassFileReader.readFully(is));
+        } finally {
+            metrics.exit(outer);
+        }
+    }
+
+    /**
+     * The model if one is kept, possibly only its header, otherwise the full model
+     */
+    private ClassModel getHeader(String name) throws IOException {
+        ClassModel model = models.get(name);
+        if (model != null) {
+            return model == MISSING ? null : model;
+        }
+        return get(name);
+    }
+
+    /**
+     * Drop the methods, enum constants and annotations of a class that was generated.
+     * The header is kept to answer {@link #getHash(String)}, {@link #isEnum(String)}
+     * and {@link #hasInterface(String, String)}, {@link #get(String)} reads the class
+     * file again.
+     * @param name binary name of the class
+     */
+    public void evict(String name) {
+        ClassModel model = models.get(name);
+        if (model != null && model != MISSING && !model.isHeader()) {
+            models.replace(name, model, model.toHeader());
+        }
+    }
+
+    /**
+     * @param name binary name of a type
+     * @return the SHA-1 of the class file or null if there is none
+     * @throws IOException 
+     */
+    public String getHash(String name) throws IOException {
+        ClassModel model = getHeader(name);
+        return model == null ? null : model.getHash();
+    }
+
+    /**
+     * @param name binary name of a type
+     * @return the binary name of the super class, null for java.lang.Object or if there is no class file
+     * @throws IOException 
+     */
+    public String getSuperName(String name) throws IOException {
+        ClassModel model = getHeader(name);
+        return model == null ? null : model.getSuperName();
+    }
+
+    /**
+     * @param name binary name of a type
+     * @return true if the type is an enum
+     * @throws IOException 
+     */
+    public boolean isEnum(String name) throws IOException {
+        ClassModel model = getHeader(name);
+        return model != null && model.isEnum();
+    }
+
+    /**
+     * @param name binary name of a type
+     * @param interfaceName binary name of an interface
+     * @return true if the type directly implements the interface
+     * @throws IOException 
+     */
+    public boolean hasInterface(String name, String interfaceName) throws IOException {
+        ClassModel model = getHeader(name);
+        return model != null && model.hasInterface(interfaceName);
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the classes of a package in every jar and directory of a class loader
+ * that contains the package, not only the first one. Each class is read and
+ * handed to a {@link Callback} as soon as it is found so the caller can start
+ * working on it while the scan goes on. When a class is in more than one place
+ * the first one wins, the same as for the class loader.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class ClassScanner {
+
+    /**
+     * Receives the classes found by a scan
+     */
+    public interface Callback {
+
+        /**
+         * Called on the scanning thread for each class found
+         * @param classInfo the class, its model is set
+         * @throws IOException
+         * @throws ClassNotFoundException 
+         */
+        void found(ClassInfo classInfo) throws IOException, ClassNotFoundException;
+    }
+
+    private final Config config;
+    private final ClassLoader loader;
+    private final ClassRepository repository;
+    private final Set<String> seen = new HashSet<String>();
+    private boolean namesOnly;
+
+    /**
+     * Constructor
+     * @param config
+     * @param loader used to find the jars and directories of the package
+     * @param repository the models of the classes found are added to it
+     */
+    public ClassScanner(Config config, ClassLoader loader, ClassRepository repository) {
+        this.config = config;
+        this.loader = loader;
+        this.repository = repository;
+    }
+
+    /**
+     * Scan every jar and directory that contains the package, including sub packages
+     * @param path the package as a resource path ending in /, like com/moesol/
+     * @param callback
+     * @throws IOException
+     * @throws ClassNotFoundException 
+     */
+    public void scan(String path, Callback callback) throws IOException, ClassNotFoundException {
+        Enumeration<URL> urls = loader.getResources(path);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if ("jar".equals(url.getProtocol())) {
+                scanJar(url, path, callback);
+            } else if ("file".equals(url.getProtocol())) {
+                scanDirectory(url, path, callback);
+            } else {
+                config.getLog().warn("Can not scan " + url);
+            }
+        }
+    }
+
+    /**
+     * Find the classes of the package in the same order as {@link #scan}, without
+     * reading their class files. The model of each class is not set.
+     * @param path the package as a resource path ending in /, like com/moesol/
+     * @param callback
+     * @throws IOException
+     * @throws ClassNotFoundException 
+     */
+    public void list(String path, Callback callback) throws IOException, ClassNotFoundException {
+        namesOnly = true;
+        try {
+            scan(path, callback);
+        } finally {
+            namesOnly = false;
+        }
+    }
+
+    /**
+     * Scan the jar of a jar: URL for classes in the package
+     * @param url a URL like jar:file:/lib/a.jar!/com/moesol/
+     * @param path
+     * @param callback
+     * @throws IOException
+     * @throws ClassNotFoundException 
+     */
+    public void scanJar(URL url, String path, Callback callback) throws IOException, ClassNotFoundException {
+        String spec = url.getPath();
+        File file = toFile(spec.substring(0, spec.indexOf("!/")));
+        if (!namesOnly) {
+            config.getLog().info("Opening jar " + file);
+        }
+        JarFile jf = new JarFile(file);
+        try {
+            Enumeration<JarEntry> entries = jf.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (entryName.startsWith(path) && entryName.endsWith(".class")) {
+                    config.getLog().debug("Entry " + entryName);
+                    found(entryName, namesOnly ? null : readFully(jf.getInputStream(entry)), callback);
+                }
+            }
+        } finally {
+            jf.close();
+        }
+    }
+
+    /**
+     * Scan the directory of a file: URL and its sub directories for classes
+     * @param url
+     * @param path
+     * @param callback
+     * @throws IOException
+     * @throws ClassNotFoundException 
+     */
+    public void scanDirectory(URL url, String path, Callback callback) throws IOException, ClassNotFoundException {
+        config.getLog().debug("Processing directory " + url);
+        scanDirectory(toFile(url.toString()), path, callback);
+    }
+
+    private void scanDirectory(File folder, String path, Callback callback) throws IOException, ClassNotFoundException {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                scanDirectory(file, path + file.getName() + "/", callback);
+            } else if (file.getName().endsWith(".class")) {
+                found(path + file.getName(), namesOnly ? null : readFully(new FileInputStream(file)), callback);
+            }
+        }
+    }
+
+    private void found(String entryName, byte[] bytes, Callback callback) throws IOException, ClassNotFoundException {
+        String path = entryName.substring(0, entryName.length() - ".class".length());
+        if (!seen.add(path)) {
+            config.getLog().debug("Skipping duplicate " + entryName);
+            return;
+        }
+        ClassInfo ci = new ClassInfo(config);
+        ci.setPackageName(path.substring(0, path.lastIndexOf('/')));
+        ci.setClassName(path.substring(path.lastIndexOf('/') + 1));
+        if (bytes != null) {
+            GenerationMetrics metrics = repository.getMetrics();
+            GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.READ);
+            ClassModel model;
+            try {
+                model = ClassFileReader.read(bytes);
+            } finally {
+                metrics.exit(outer);
+            }
+            repository.add(model);
+            ci.setModel(model);
+        }
+        callback.found(ci);
+    }
+
+    private byte[] readFully(InputStream is) throws IOException {
+        GenerationMetrics metrics = repository.getMetrics();
+        GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.READ);
+        try {
+            return ClassFileReader.readFully(is);
+        } finally {
+            metrics.exit(outer);
+        }
+    }
+
+    private static File toFile(String url) throws IOException {
+        try {
+            return new File(new URI(url));
+        } catch (URISyntaxException ex) {
+            throw new IOException("Bad class path URL " + url + ": " + ex.getMessage());
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Bad class path URL " + url + ": " + ex.getMessage());
+        }
+    }
+}
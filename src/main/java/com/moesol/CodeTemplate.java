@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A printf style pattern compiled once into the literal text around its
+ * arguments. Supports %s, %n and %%, which is all the generator uses, and
+ * writes the same text as {@link java.util.Formatter} for them.
+ * Immutable, compiled templates are shared by every thread.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+final class CodeTemplate {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    /**
+     * Compiled templates by pattern. The patterns are constants, so this stays small.
+     */
+    private static final ConcurrentMap<String, CodeTemplate> TEMPLATES = new ConcurrentHashMap<String, CodeTemplate>();
+
+    /**
+     * The text before each argument, then the text after the last one
+     */
+    private final String[] segments;
+
+    private CodeTemplate(String[] segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Get the compiled template of a pattern, compiling it on first use
+     * @param pattern
+     * @return 
+     */
+    static CodeTemplate get(String pattern) {
+        CodeTemplate template = TEMPLATES.get(pattern);
+        if (template == null) {
+            template = compile(pattern);
+            TEMPLATES.putIfAbsent(pattern, template);
+        }
+        return template;
+    }
+
+    /**
+     * Split a pattern into its literal segments
+     * @param pattern
+     * @return 
+     * @throws IllegalArgumentException for a conversion other than %s, %n or %%
+     */
+    static CodeTemplate compile(String pattern) {
+        List<String> segments = new ArrayList<String>();
+        StringBuilder segment = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                segment.append(c);
+                continue;
+            }
+            char conversion = ++i < pattern.length() ? pattern.charAt(i) : ' ';
+            if (conversion == 's') {
+                segments.add(segment.toString());
+                segment.setLength(0);
+            } else if (conversion == 'n') {
+                segment.append(LINE_SEPARATOR);
+            } else if (conversion == '%') {
+                segment.append('%');
+            } else {
+                throw new IllegalArgumentException("Unsupported conversion %" + conversion + " in " + pattern);
+            }
+        }
+        segments.add(segment.toString());
+        return new CodeTemplate(segments.toArray(new String[segments.size()]));
+    }
+
+    /**
+     * @return the number of %s arguments
+     */
+    int getArgumentCount() {
+        return segments.length - 1;
+    }
+
+    /**
+     * Append the template with its arguments, extra arguments are ignored like printf
+     * @param sb
+     * @param args
+     * @throws IllegalArgumentException if there are too few arguments
+     */
+    void appendTo(StringBuilder sb, Object... args) {
+        int count = segments.length - 1;
+        if (args.length < count) {
+            throw new IllegalArgumentException("Expected " + count + " arguments but got " + args.length);
+        }
+        for (int i = 0; i < count; i++) {
+            sb.append(segments[i]).append(args[i]);
+        }
+        sb.append(segments[count]);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+/**
+ * Collects generated source in a StringBuilder through compiled
+ * {@link CodeTemplate}s. Each thread reuses one writer, so rendering a class
+ * does not allocate a new buffer or parse its format strings again.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+class CodeWriter {
+
+    /**
+     * Buffers larger than this are not kept for the next class
+     */
+    private static final int MAX_RETAINED = 256 * 1024;
+
+    private static final ThreadLocal<CodeWriter> WRITERS = new ThreadLocal<CodeWriter>() {
+        @Override
+        protected CodeWriter initialValue() {
+            return new CodeWriter();
+        }
+    };
+
+    private StringBuilder sb = new StringBuilder(8192);
+
+    /**
+     * The empty writer of the current thread. Its content is replaced by the
+     * next call on the same thread, so get the bytes before rendering again.
+     * @return 
+     */
+    static CodeWriter forThread() {
+        CodeWriter writer = WRITERS.get();
+        writer.reset();
+        return writer;
+    }
+
+    /**
+     * Append a pattern with %s, %n and %% conversions
+     * @param pattern
+     * @param args
+     */
+    void printf(String pattern, Object... args) {
+        CodeTemplate.get(pattern).appendTo(sb, args);
+    }
+
+    /**
+     * Append text as is
+     * @param text
+     */
+    void print(String text) {
+        sb.append(text);
+    }
+
+    /**
+     * @return the source in the platform encoding, like a PrintStream would write it
+     */
+    byte[] toBytes() {
+        return sb.toString().getBytes();
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    private void reset() {
+        if (sb.capacity() > MAX_RETAINED) {
+            sb = new StringBuilder(8192);
+        } else {
+            sb.setLength(0);
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.moesol;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.maven.plugin.logging.Log;
 
 /**
@@ -24,6 +26,23 @@ import org.apache.maven.plugin.logging.Log;
  */
 public class Config {
 
+    /**
+     * Dates are exposed as the ISO 8601 String of the wire format
+     */
+    public static final String DATE_STRING = "string";
+    /**
+     * Dates are exposed as a double of milliseconds since the epoch
+     */
+    public static final String DATE_EPOCH_MILLIS = "epochMillis";
+    /**
+     * Overlays extend JavaScriptObject and read properties in JSNI methods
+     */
+    public static final String OUTPUT_JSNI = "jsni";
+    /**
+     * Overlays are JsInterop native types with a field per property
+     */
+    public static final String OUTPUT_JSINTEROP = "jsinterop";
+
     /**
      * Part of the old package name to be replaced
      */
@@ -32,6 +51,14 @@ public class Config {
      * The new package name to generate to
      */
     private String newPackage;
+    /**
+     * More package renames, tried in order after oldPackage
+     */
+    private List<PackageMapping> packageMappings = new ArrayList<PackageMapping>();
+    /**
+     * Compiled from the renames when first needed
+     */
+    private volatile PackageMapper packageMapper;
     /**
      * The source package to generate from
      */
@@ -48,6 +75,70 @@ public class Config {
      * True if interfaces should be generated for all overlay objects
      */
     private boolean generateInterface;
+    /**
+     * Number of threads used to generate classes, 0 or less uses one per processor
+     */
+    private int threads;
+    /**
+     * Generate eval methods that check the text with the RFC 4627 regex and call eval
+     * instead of using the native JSON.parse
+     */
+    private boolean legacyEval;
+    /**
+     * Generate list getters that do not create a missing array, it is created on the first add or set
+     */
+    private boolean lazyLists;
+    /**
+     * Generate lists of strings, boxed numbers and booleans as helpers backed by typed javascript arrays
+     * instead of java arrays
+     */
+    private boolean typedLists;
+    /**
+     * How XMLGregorianCalendar properties are exposed, {@link #DATE_STRING} or {@link #DATE_EPOCH_MILLIS}
+     */
+    private String dateStrategy = DATE_STRING;
+    /**
+     * The kind of overlay generated, {@link #OUTPUT_JSNI} or {@link #OUTPUT_JSINTEROP}
+     */
+    private String outputMode = OUTPUT_JSNI;
+    /**
+     * Only generate the classes that can be reached from the root classes
+     */
+    private boolean pruneUnreachable;
+    /**
+     * Binary names of the classes pruning starts from, the @XmlRootElement classes if empty
+     */
+    private List<String> rootClasses = new ArrayList<String>();
+    /**
+     * Finds the class files to generate from, the context class loader if not set
+     */
+    private ClassLoader classLoader;
+    /**
+     * Directory of the {@link ModelCache}, no cache is used if null
+     */
+    private String modelCacheDirectory;
+    /**
+     * File the JSON metrics of a run are written to, no report is written if null
+     */
+    private String metricsReport;
+
+    /**
+     * Describes every option that changes the generated source.
+     * Stored in the generation manifest so a changed config regenerates everything.
+     * @return 
+     */
+    public String getFingerprint() {
+        return "oldPackage=" + oldPackage
+            + ",newPackage=" + newPackage
+            + ",packageMappings=" + packageMappings
+            + ",sourcePackage=" + sourcePackage
+            + ",generateInterface=" + generateInterface
+            + ",legacyEval=" + legacyEval
+            + ",lazyLists=" + lazyLists
+            + ",typedLists=" + typedLists
+            + ",dateStrategy=" + dateStrategy
+            + ",outputMode=" + outputMode;
+    }
 
     /**
      * @return the oldPackage
@@ -61,6 +152,7 @@ public class Config {
      */
     public void setOldPackage(String oldPackage) {
         this.oldPackage = oldPackage;
+        packageMapper = null;
     }
 
     /**
@@ -75,6 +167,38 @@ public class Config {
      */
     public void setNewPackage(String newPackage) {
         this.newPackage = newPackage;
+        packageMapper = null;
+    }
+
+    /**
+     * @return the packageMappings
+     */
+    public List<PackageMapping> getPackageMappings() {
+        return packageMappings;
+    }
+
+    /**
+     * @param packageMappings the packageMappings to set
+     */
+    public void setPackageMappings(List<PackageMapping> packageMappings) {
+        this.packageMappings = new ArrayList<PackageMapping>(packageMappings);
+        packageMapper = null;
+    }
+
+    /**
+     * The package renames compiled once: oldPackage to newPackage followed by the packageMappings.
+     * @return 
+     */
+    public PackageMapper getPackageMapper() {
+        PackageMapper mapper = packageMapper;
+        if (mapper == null) {
+            List<PackageMapping> rules = new ArrayList<PackageMapping>();
+            rules.add(new PackageMapping(oldPackage, newPackage));
+            rules.addAll(packageMappings);
+            mapper = new PackageMapper(rules);
+            packageMapper = mapper;
+        }
+        return mapper;
     }
 
     /**
@@ -132,4 +256,202 @@ public class Config {
     public void setGenerateInterface(boolean generateInterface) {
         this.generateInterface = generateInterface;
     }
+
+    /**
+     * @return the threads, 0 or less uses one per processor
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads the threads to set
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return true to parse with the RFC 4627 regex and eval instead of JSON.parse
+     */
+    public boolean isLegacyEval() {
+        return legacyEval;
+    }
+
+    /**
+     * @param legacyEval the legacyEval to set
+     */
+    public void setLegacyEval(boolean legacyEval) {
+        this.legacyEval = legacyEval;
+    }
+
+    /**
+     * @return true if list getters leave a missing array alone until the first add or set
+     */
+    public boolean isLazyLists() {
+        return lazyLists;
+    }
+
+    /**
+     * @param lazyLists the lazyLists to set
+     */
+    public void setLazyLists(boolean lazyLists) {
+        this.lazyLists = lazyLists;
+    }
+
+    /**
+     * @return true if lists of strings, boxed numbers and booleans use the typed list helpers
+     */
+    public boolean isTypedLists() {
+        return typedLists;
+    }
+
+    /**
+     * @param typedLists the typedLists to set
+     */
+    public void setTypedLists(boolean typedLists) {
+        this.typedLists = typedLists;
+    }
+
+    /**
+     * @return how XMLGregorianCalendar properties are exposed
+     */
+    public String getDateStrategy() {
+        return dateStrategy;
+    }
+
+    /**
+     * @param dateStrategy {@link #DATE_STRING} or {@link #DATE_EPOCH_MILLIS}
+     * @throws IllegalArgumentException for any other strategy
+     */
+    public void setDateStrategy(String dateStrategy) {
+        if (!DATE_STRING.equals(dateStrategy) && !DATE_EPOCH_MILLIS.equals(dateStrategy)) {
+            throw new IllegalArgumentException("Unknown dateStrategy " + dateStrategy
+                + ", expected " + DATE_STRING + " or " + DATE_EPOCH_MILLIS);
+        }
+        this.dateStrategy = dateStrategy;
+    }
+
+    /**
+     * @return true if dates are exposed as epoch milliseconds
+     */
+    public boolean isEpochMillisDates() {
+        return DATE_EPOCH_MILLIS.equals(dateStrategy);
+    }
+
+    /**
+     * @return the kind of overlay generated
+     */
+    public String getOutputMode() {
+        return outputMode;
+    }
+
+    /**
+     * @param outputMode {@link #OUTPUT_JSNI} or {@link #OUTPUT_JSINTEROP}
+     * @throws IllegalArgumentException for any other mode
+     */
+    public void setOutputMode(String outputMode) {
+        if (!OUTPUT_JSNI.equals(outputMode) && !OUTPUT_JSINTEROP.equals(outputMode)) {
+            throw new IllegalArgumentException("Unknown outputMode " + outputMode
+                + ", expected " + OUTPUT_JSNI + " or " + OUTPUT_JSINTEROP);
+        }
+        this.outputMode = outputMode;
+    }
+
+    /**
+     * @return true if JsInterop native types are generated
+     */
+    public boolean isJsInterop() {
+        return OUTPUT_JSINTEROP.equals(outputMode);
+    }
+
+    /**
+     * Check that the options can be used together
+     * @throws IllegalArgumentException if they can not
+     */
+    public void validate() {
+        if (isJsInterop()) {
+            // these need methods that implement interfaces or JSNI helpers
+            if (generateInterface) {
+                throw new IllegalArgumentException("generateInterface is not supported with outputMode " + OUTPUT_JSINTEROP);
+            }
+            if (legacyEval) {
+                throw new IllegalArgumentException("legacyEval is not supported with outputMode " + OUTPUT_JSINTEROP);
+            }
+            if (isEpochMillisDates()) {
+                throw new IllegalArgumentException("dateStrategy " + DATE_EPOCH_MILLIS + " is not supported with outputMode " + OUTPUT_JSINTEROP);
+            }
+        }
+    }
+
+    /**
+     * @return true to only generate the classes reachable from the root classes
+     */
+    public boolean isPruneUnreachable() {
+        return pruneUnreachable;
+    }
+
+    /**
+     * @param pruneUnreachable the pruneUnreachable to set
+     */
+    public void setPruneUnreachable(boolean pruneUnreachable) {
+        this.pruneUnreachable = pruneUnreachable;
+    }
+
+    /**
+     * @return binary names of the classes pruning starts from
+     */
+    public List<String> getRootClasses() {
+        return rootClasses;
+    }
+
+    /**
+     * @param rootClasses binary names of the classes pruning starts from, the
+     * @XmlRootElement classes are used if empty
+     */
+    public void setRootClasses(List<String> rootClasses) {
+        this.rootClasses = rootClasses;
+    }
+
+    /**
+     * @return the loader the class files are read from, the context class loader if none was set
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader != null ? classLoader : Thread.currentThread().getContextClassLoader();
+    }
+
+    /**
+     * @param classLoader the loader the class files are read from
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return the directory the resolved models are cached in between builds, null if there is no cache
+     */
+    public String getModelCacheDirectory() {
+        return modelCacheDirectory;
+    }
+
+    /**
+     * @param modelCacheDirectory the directory to cache the resolved models in, null for no cache
+     */
+    public void setModelCacheDirectory(String modelCacheDirectory) {
+        this.modelCacheDirectory = modelCacheDirectory;
+    }
+
+    /**
+     * @return the file the JSON metrics of a run are written to, null if no report is written
+     */
+    public String getMetricsReport() {
+        return metricsReport;
+    }
+
+    /**
+     * @param metricsReport the file to write the JSON metrics of a run to, null for none
+     */
+    public void setMetricsReport(String metricsReport) {
+        this.metricsReport = metricsReport;
+    }
 }
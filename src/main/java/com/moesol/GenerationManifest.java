@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers, for every generated class, the hash of its class file, the files
+ * written for it and the hashes of the types it referenced. Stored in the
+ * output directory so the next run only regenerates classes whose inputs changed
+ * and removes the files of classes that no longer exist.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class GenerationManifest {
+
+    /**
+     * Name of the manifest file in the output directory
+     */
+    public static final String FILE_NAME = ".js-overlay-manifest";
+    /**
+     * Version of the generated source. Bump it only in a release whose generated
+     * source differs for the same inputs, every bump regenerates all output once.
+     * Options are covered by the fingerprint and need no bump.
+     */
+    private static final int VERSION = 1;
+    private static final String MISSING = "-";
+
+    private final File outputDirectory;
+    private final String fingerprint;
+    private final Map<String, Entry> previous = new TreeMap<String, Entry>();
+    private final Map<String, Entry> current = new TreeMap<String, Entry>();
+
+    private GenerationManifest(File outputDirectory, String fingerprint) {
+        this.outputDirectory = outputDirectory;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Load the manifest of the last run. If it is missing or was written for a
+     * different config the manifest starts empty and everything is regenerated.
+     *
+     * @param outputDirectory
+     * @param fingerprint describes the options the output was generated with
+     * @return
+     * @throws IOException 
+     */
+    public static GenerationManifest load(File outputDirectory, String fingerprint) throws IOException {
+        GenerationManifest manifest = new GenerationManifest(outputDirectory, fingerprint);
+        File file = new File(outputDirectory, FILE_NAME);
+        if (!file.exists()) {
+            return manifest;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            if (!("version\t" + VERSION).equals(reader.readLine())
+                || !("config\t" + manifest.fingerprint).equals(reader.readLine())) {
+                return manifest;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 5 || !"class".equals(fields[0])) {
+                    continue;
+                }
+                Entry entry = new Entry(fields[2]);
+                entry.outputs.addAll(split(fields[3]));
+                for (String ref : split(fields[4])) {
+                    int eq = ref.indexOf('=');
+                    entry.references.put(ref.substring(0, eq), ref.substring(eq + 1));
+                }
+                manifest.previous.put(fields[1], entry);
+            }
+        } finally {
+            reader.close();
+        }
+        return manifest;
+    }
+
+    private static List<String> split(String field) {
+        if (field.length() == 0) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, field.split(","));
+        return list;
+    }
+
+    /**
+     * A class is up to date when its class file and every referenced class file
+     * has the same hash as the last run and all of its output files still exist.
+     * An up to date class is carried over to the new manifest.
+     *
+     * @param model the class being generated
+     * @param repository used to hash the referenced types
+     * @return true if the class does not need to be generated
+     * @throws IOException 
+     */
+    public boolean isUpToDate(ClassModel model, ClassRepository repository) throws IOException {
+        Entry entry = previous.get(model.getName());
+        if (entry == null || !entry.hash.equals(model.getHash())) {
+            return false;
+        }
+        for (String output : entry.outputs) {
+            if (!new File(outputDirectory, output).exists()) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, String> ref : entry.references.entrySet()) {
+            if (!ref.getValue().equals(hashOf(ref.getKey(), repository))) {
+                return false;
+            }
+        }
+        current.put(model.getName(), entry);
+        return true;
+    }
+
+    /**
+     * Record a class that was generated in this run
+     *
+     * @param model the class that was generated
+     * @param outputs files written for the class
+     * @param references binary names of the types the output depends on
+     * @param repository used to hash the referenced types
+     * @throws IOException 
+     */
+    public void record(ClassModel model, List<File> outputs, Iterable<String> references, ClassRepository repository) throws IOException {
+        Entry entry = new Entry(model.getHash());
+        String root = outputDirectory.getPath() + File.separator;
+        for (File output : outputs) {
+            String path = output.getPath();
+            if (path.startsWith(root)) {
+                path = path.substring(root.length());
+            }
+            entry.outputs.add(path.replace(File.separatorChar, '/'));
+        }
+        for (String ref : references) {
+            if (!ref.equals(model.getName())) {
+                entry.references.put(ref, hashOf(ref, repository));
+            }
+        }
+        current.put(model.getName(), entry);
+    }
+
+    private static String hashOf(String name, ClassRepository repository) throws IOException {
+        String hash = repository.getHash(name);
+        return hash == null ? MISSING : hash;
+    }
+
+    /**
+     * Delete the files of classes that were generated by the last run but not by this one.
+     * Files still written by a current class are kept.
+     *
+     * @return the files that were deleted
+     */
+    public List<File> deleteRemovedOutputs() {
+        List<String> keep = new ArrayList<String>();
+        for (Entry entry : current.values()) {
+            keep.addAll(entry.outputs);
+        }
+        List<File> deleted = new ArrayList<File>();
+        for (Map.Entry<String, Entry> entry : previous.entrySet()) {
+            if (current.containsKey(entry.getKey())) {
+                continue;
+            }
+            for (String output : entry.getValue().outputs) {
+                File file = new File(outputDirectory, output);
+                if (!keep.contains(output) && file.delete()) {
+                    deleted.add(file);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Write the manifest for this run, sorted so it is stable between runs
+     *
+     * @throws IOException 
+     */
+    public void store() throws IOException {
+        outputDirectory.mkdirs();
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+            new FileOutputStream(new File(outputDirectory, FILE_NAME)), "UTF-8"));
+        try {
+            writer.print("version\t" + VERSION + "\n");
+            writer.print("config\t" + fingerprint + "\n");
+            for (Map.Entry<String, Entry> e : current.entrySet()) {
+                Entry entry = e.getValue();
+                StringBuilder refs = new StringBuilder();
+                for (Map.Entry<String, String> ref : entry.references.entrySet()) {
+                    if (refs.length() > 0) {
+                        refs.append(',');
+                    }
+                    refs.append(ref.getKey()).append('=').append(ref.getValue());
+                }
+                writer.print("class\t" + e.getKey() + "\t" + entry.hash + "\t"
+                    + join(entry.outputs) + "\t" + refs + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String join(List<String> list) {
+        StringBuilder sb = new StringBuilder();
+        for (String s : list) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * What was generated for one class
+     */
+    private static class Entry {
+
+        private final String hash;
+        private final List<String> outputs = new ArrayList<String>();
+        private final Map<String, String> references = new TreeMap<String, String>();
+
+        Entry(String hash) {
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Times the phases of a generator run and counts what it did. A thread is in
+ * one phase at a time: entering a phase pauses the phase it was in, so time
+ * spent reading a class file while resolving a type is counted once, as
+ * reading. Phase times are summed over all threads. Safe to use from several
+ * threads.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class GenerationMetrics {
+
+    /**
+     * Where the time of a run goes
+     */
+    public enum Phase {
+
+        SCAN("scan", "scan"),
+        READ("readClassFiles", "read class files"),
+        MANIFEST("manifestAndCache", "manifest and cache"),
+        INTROSPECT("introspect", "introspect"),
+        RESOLVE("resolveTypes", "resolve types"),
+        RENDER("render", "render"),
+        WRITE("write", "write files");
+
+        private final String key;
+        private final String label;
+
+        private Phase(String key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+    }
+
+    /**
+     * What a run did
+     */
+    public enum Counter {
+
+        CLASSES_SCANNED("classesScanned", "classes scanned"),
+        CLASSES_GENERATED("classesGenerated", "classes generated"),
+        CLASSES_UP_TO_DATE("classesUpToDate", "classes up to date"),
+        CLASSES_RESTORED("classesRestored", "classes restored from the model cache"),
+        PROPERTIES_EMITTED("propertiesEmitted", "properties emitted"),
+        FILES_WRITTEN("filesWritten", "files written"),
+        FILES_SKIPPED("filesSkipped", "files skipped"),
+        BYTES_WRITTEN("bytesWritten", "bytes written");
+
+        private final String key;
+        private final String label;
+
+        private Counter(String key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+    }
+
+    /**
+     * The number of slowest classes listed in the summary
+     */
+    private static final int SLOWEST = 10;
+
+    private static final Comparator<ClassTiming> SLOWEST_FIRST = new Comparator<ClassTiming>() {
+        @Override
+        public int compare(ClassTiming o1, ClassTiming o2) {
+            return o1.nanos < o2.nanos ? 1 : o1.nanos > o2.nanos ? -1 : o1.name.compareTo(o2.name);
+        }
+    };
+
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray phaseCalls = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final ConcurrentLinkedQueue<ClassTiming> classes = new ConcurrentLinkedQueue<ClassTiming>();
+    private final ThreadLocal<Current> current = new ThreadLocal<Current>() {
+        @Override
+        protected Current initialValue() {
+            return new Current();
+        }
+    };
+    private volatile long started = System.nanoTime();
+
+    /**
+     * Clear everything and restart the clock of the run
+     */
+    public void reset() {
+        for (int i = 0; i < phaseNanos.length(); i++) {
+            phaseNanos.set(i, 0);
+            phaseCalls.set(i, 0);
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        classes.clear();
+        started = System.nanoTime();
+    }
+
+    /**
+     * Move the calling thread into a phase, pausing the phase it was in.
+     * Always pair with {@link #exit(Phase)} in a finally block.
+     *
+     * @param phase the phase, or null for time that is not counted such as waiting
+     * @return the phase the thread was in, pass it to exit
+     */
+    public Phase enter(Phase phase) {
+        Current c = current.get();
+        long now = System.nanoTime();
+        Phase outer = c.phase;
+        if (outer != null) {
+            phaseNanos.addAndGet(outer.ordinal(), now - c.since);
+        }
+        if (phase != null) {
+            phaseCalls.incrementAndGet(phase.ordinal());
+        }
+        c.phase = phase;
+        c.since = now;
+        return outer;
+    }
+
+    /**
+     * Return the calling thread to the phase it was in before {@link #enter(Phase)}
+     *
+     * @param outer the phase returned by enter
+     */
+    public void exit(Phase outer) {
+        Current c = current.get();
+        long now = System.nanoTime();
+        if (c.phase != null) {
+            phaseNanos.addAndGet(c.phase.ordinal(), now - c.since);
+        }
+        c.phase = outer;
+        c.since = now;
+    }
+
+    /**
+     * @param counter
+     * @param delta 
+     */
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    /**
+     * Record a generated class
+     *
+     * @param name binary name of the class
+     * @param nanos wall time spent on the class
+     * @param properties the number of properties emitted
+     */
+    public void recordClass(String name, long nanos, int properties) {
+        classes.add(new ClassTiming(name, nanos, properties));
+        add(Counter.CLASSES_GENERATED, 1);
+        add(Counter.PROPERTIES_EMITTED, properties);
+    }
+
+    /**
+     * @param phase
+     * @return the time spent in the phase by all threads, in nanoseconds
+     */
+    public long getNanos(Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    /**
+     * @param phase
+     * @return the number of times a thread entered the phase
+     */
+    public long getCalls(Phase phase) {
+        return phaseCalls.get(phase.ordinal());
+    }
+
+    /**
+     * @param counter
+     * @return 
+     */
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    /**
+     * @return the generated classes, slowest first
+     */
+    private List<ClassTiming> getClasses() {
+        List<ClassTiming> list = new ArrayList<ClassTiming>(classes);
+        Collections.sort(list, SLOWEST_FIRST);
+        return list;
+    }
+
+    /**
+     * Log one line with the time of the run, and at debug a table of the phases,
+     * the counters and the slowest classes
+     *
+     * @param log
+     * @param threads the number of threads that generated classes
+     */
+    public void logSummary(Log log, int threads) {
+        log.info(String.format(Locale.ROOT, "Generation took %.1f ms on %d threads, %d properties emitted",
+            millis(System.nanoTime() - started), threads, get(Counter.PROPERTIES_EMITTED)));
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        log.debug("Phase times are summed over the threads");
+        log.debug(String.format(Locale.ROOT, "  %-22s %12s %10s", "phase", "ms", "calls"));
+        for (Phase phase : Phase.values()) {
+            log.debug(String.format(Locale.ROOT, "  %-22s %12.1f %10d", phase.label, millis(getNanos(phase)), getCalls(phase)));
+        }
+        for (Counter counter : Counter.values()) {
+            log.debug(String.format(Locale.ROOT, "  %-38s %10d", counter.label, get(counter)));
+        }
+        List<ClassTiming> list = getClasses();
+        if (!list.isEmpty()) {
+            log.debug("  slowest classes:");
+            for (ClassTiming timing : list.subList(0, Math.min(SLOWEST, list.size()))) {
+                log.debug(String.format(Locale.ROOT, "  %12.1f ms %4d properties  %s", millis(timing.nanos), timing.properties, timing.name));
+            }
+        }
+    }
+
+    /**
+     * Write the phases, counters and every generated class as JSON
+     *
+     * @param file
+     * @param threads the number of threads that generated classes
+     * @throws IOException 
+     */
+    public void writeReport(File file, int threads) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.print("{\n");
+            writer.print(String.format(Locale.ROOT, "  \"elapsedMillis\": %.3f,\n", millis(System.nanoTime() - started)));
+            writer.print("  \"threads\": " + threads + ",\n");
+            writer.print("  \"phases\": {");
+            String separator = "\n";
+            for (Phase phase : Phase.values()) {
+                writer.print(String.format(Locale.ROOT, "%s    \"%s\": {\"millis\": %.3f, \"calls\": %d}",
+                    separator, phase.key, millis(getNanos(phase)), getCalls(phase)));
+                separator = ",\n";
+            }
+            writer.print("\n  },\n  \"counters\": {");
+            separator = "\n";
+            for (Counter counter : Counter.values()) {
+                writer.print(separator + "    \"" + counter.key + "\": " + get(counter));
+                separator = ",\n";
+            }
+            writer.print("\n  },\n  \"classes\": [");
+            separator = "\n";
+            for (ClassTiming timing : getClasses()) {
+                writer.print(String.format(Locale.ROOT, "%s    {\"name\": \"%s\", \"millis\": %.3f, \"properties\": %d}",
+                    separator, escape(timing.name), millis(timing.nanos), timing.properties));
+                separator = ",\n";
+            }
+            writer.print("\n  ]\n}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The phase a thread is in and when it entered it
+     */
+    private static class Current {
+
+        private Phase phase;
+        private long since;
+    }
+
+    /**
+     * The time spent on one generated class
+     */
+    private static class ClassTiming {
+
+        private final String name;
+        private final long nanos;
+        private final int properties;
+
+        ClassTiming(String name, long nanos, int properties) {
+            this.name = name;
+            this.nanos = nanos;
+            this.properties = properties;
+        }
+    }
+}
@@ -15,34 +15,71 @@
  */
 package com.moesol;
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import javax.xml.bind.annotation.XmlRootElement;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Generates the overlay source for one execution. All state, including type
+ * resolution, belongs to the generator so several generators can run at once.
  *
  * @author summersb
  * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
  */
 public class JavaScriptOverlayGenerator {
 
+    /**
+     * Body of the generated eval methods, parses with the browser's JSON.parse
+     */
+    static final String NATIVE_PARSE = "return JSON.parse(jsonText);";
+    /**
+     * Body of the generated eval methods with {@link Config#isLegacyEval()}.
+     * As per http://tools.ietf.org/html/rfc4627 the text is checked with a regex
+     * over a copy with the strings removed, then passed to eval.
+     */
+    static final String LEGACY_EVAL = "return !(/[^,:{}\\[\\]0-9.\\-+Eaeflnr-u \\n\\r\\t]/.test( "
+        + "jsonText.replace(/\"(\\\\.|[^\"\\\\])*\"/g, ''))) "
+        + " && "
+        + "eval('(' + jsonText + ')');";
+
+    /**
+     * The list of classes left out by {@link Config#isPruneUnreachable()}, in the output directory
+     */
+    static final String UNREACHABLE_REPORT = "js-overlay-unreachable.txt";
+
+    /**
+     * Helper classes written to the top package, besides the {@link PrimitiveList} helpers of typedLists
+     */
+    private static final String[] HELPERS = {"ListHelper.java", "JsonHelper.java", "EnumHelper.java", "EnumListHelper.java", "DateHelper.java", "IncrementalParser.java"};
+
     private ClassLoader loader;
+    private BeanIntrospector introspector;
+    private TypeResolver resolver;
+    private SourceWriter sourceWriter;
     private final Config config;
-    private ClassInfo topPackage;
+    private final GenerationMetrics metrics = new GenerationMetrics();
+    private volatile ClassInfo topPackage;
 
     /**
      * Constructor.
@@ -51,7 +88,6 @@ public class JavaScriptOverlayGenerator {
      */
     public JavaScriptOverlayGenerator(Config config) {
         this.config = config;
-        ReturnType.setConfig(config);
     }
 
     /**
@@ -60,83 +96,183 @@ public class JavaScriptOverlayGenerator {
      * @throws ClassNotFoundException when sourcePackage does not exist
      * @throws IOException
      */
-    public void generate() throws ClassNotFoundException, IOException, IntrospectionException {
+    public void generate() throws ClassNotFoundException, IOException {
         generate(new File(config.getOutputDirectory()));
     }
 
     /**
-     * Determine if source is a directory or jar file then call correct methods
+     * Scan every jar and directory that contains the source package and generate
+     * each class as soon as it is found, so scanning overlaps with generation.
      *
      * @param targetDir
      * @throws ClassNotFoundException
      * @throws IOException
      */
-    private void generate(File targetDir) throws ClassNotFoundException, IOException, IntrospectionException {
-        loader = Thread.currentThread().getContextClassLoader();
+    private void generate(File targetDir) throws ClassNotFoundException, IOException {
+        metrics.reset();
+        setLoader(config.getClassLoader());
 
         String packageName = config.getSourcePackage().replace(".", "/") + "/";
-        URL packageURL = loader.getResource(packageName);
-        String protocol = packageURL.getProtocol();
-        List<ClassInfo> list;
-        if ("jar".equals(protocol)) {
-            list = processJar(targetDir);
+        if (loader.getResource(packageName) == null) {
+            throw new ClassNotFoundException(config.getSourcePackage());
+        }
+        config.getLog().info("Writing Javascript Overlay files");
+        if (config.isPruneUnreachable()) {
+            // every class has to be known before the reachable ones can be picked
+            ClassCollector all = new ClassCollector();
+            GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.SCAN);
+            try {
+                createScanner().scan(packageName, all);
+            } finally {
+                metrics.exit(outer);
+            }
+            GenerationRun run = new GenerationRun(getTopPackage(all.getClasses()), all.getClasses().size());
+            try {
+                for (ClassInfo classInfo : pruneUnreachable(all.getClasses())) {
+                    run.submit(classInfo);
+                }
+                run.finish();
+            } finally {
+                run.close();
+            }
+            return;
+        }
+        // the helpers go to the same package as with writeJso(List), the names of
+        // the classes are enough to pick it before the first class is generated
+        ClassCollector names = new ClassCollector();
+        GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.SCAN);
+        try {
+            createScanner().list(packageName, names);
+        } finally {
+            metrics.exit(outer);
+        }
+        final GenerationRun run = new GenerationRun(getTopPackage(names.getClasses()), names.getClasses().size());
+        try {
+            outer = metrics.enter(GenerationMetrics.Phase.SCAN);
+            try {
+                createScanner().scan(packageName, new ClassScanner.Callback() {
+                    @Override
+                    public void found(ClassInfo classInfo) throws IOException, ClassNotFoundException {
+                        run.submit(classInfo);
+                    }
+                });
+            } finally {
+                metrics.exit(outer);
+            }
+            run.finish();
+        } finally {
+            run.close();
+        }
+    }
+
+    /**
+     * Keep the classes that can be reached from the root classes: the configured
+     * ones, or the @XmlRootElement classes. A class reaches its super classes, the
+     * types of its properties and its sub classes, which can be sent in their place.
+     * The classes left out are logged and listed in {@link #UNREACHABLE_REPORT}.
+     *
+     * @param classes every class found
+     * @return the reachable classes, in the order they were found
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    List<ClassInfo> pruneUnreachable(List<ClassInfo> classes) throws IOException, ClassNotFoundException {
+        Map<String, ClassModel> models = new HashMap<String, ClassModel>();
+        for (ClassInfo classInfo : classes) {
+            models.put(classInfo.getOriginalName(), getModel(classInfo));
+        }
+        LinkedList<String> pending = new LinkedList<String>();
+        if (config.getRootClasses().isEmpty()) {
+            for (ClassModel model : models.values()) {
+                if (model.isRootElement()) {
+                    pending.add(model.getName());
+                }
+            }
         } else {
-            list = processDirectory(packageName, targetDir);
+            for (String root : config.getRootClasses()) {
+                if (!models.containsKey(root)) {
+                    config.getLog().warn("Root class " + root + " is not in " + config.getSourcePackage());
+                }
+                pending.add(root);
+            }
+        }
+        if (pending.isEmpty()) {
+            config.getLog().warn("No root classes found, nothing is reachable");
+        }
+        Set<String> reachable = new HashSet<String>();
+        while (!pending.isEmpty()) {
+            while (!pending.isEmpty()) {
+                String name = pending.removeFirst();
+                ClassModel model = models.get(name);
+                if (model != null && reachable.add(name)) {
+                    pending.addAll(getReferences(model));
+                }
+            }
+            for (ClassModel model : models.values()) {
+                if (!reachable.contains(model.getName()) && reachable.contains(model.getSuperName())) {
+                    pending.add(model.getName());
+                }
+            }
+        }
+        List<ClassInfo> kept = new ArrayList<ClassInfo>();
+        Set<String> unreachable = new TreeSet<String>();
+        for (ClassInfo classInfo : classes) {
+            if (reachable.contains(classInfo.getOriginalName())) {
+                kept.add(classInfo);
+            } else {
+                unreachable.add(classInfo.getOriginalName());
+            }
+        }
+        config.getLog().info("Pruned " + unreachable.size() + " of " + classes.size() + " classes that are not reachable from the root classes");
+        writeUnreachableReport(unreachable);
+        return kept;
+    }
+
+    /**
+     * List the pruned classes, one binary name per line
+     *
+     * @param unreachable
+     * @throws IOException
+     */
+    private void writeUnreachableReport(Set<String> unreachable) throws IOException {
+        File outputDirectory = new File(config.getOutputDirectory());
+        outputDirectory.mkdirs();
+        PrintStream ps = new PrintStream(new FileOutputStream(new File(outputDirectory, UNREACHABLE_REPORT)), false, "UTF-8");
+        try {
+            ps.printf("# Classes in %s that are not reachable from the root classes%n", config.getSourcePackage());
+            for (String name : unreachable) {
+                ps.printf("%s%n", name);
+            }
+        } finally {
+            ps.close();
         }
-        writeJso(list);
     }
 
     /**
-     * Read a jar file and add all matching classfiles to the List
+     * Find the classes of the source package in every jar that contains it
      *
      * @param targetDir
-     * @return List<ClassInfo> containing all matching classes from the jar
+     * @return List<ClassInfo> containing all matching classes from the jars
      * @throws IOException
      * @throws ClassNotFoundException
      */
     List<ClassInfo> processJar(File targetDir) throws IOException, ClassNotFoundException {
-        config.getLog().debug("Procesing jar file");
-        ArrayList<ClassInfo> list = new ArrayList<ClassInfo>();
+        config.getLog().debug("Procesing jar files");
         String searchPath = config.getSourcePackage().replace(".", "/") + "/";
-        URL packageURL = loader.getResource(searchPath);
-        String jarFileName;
-        JarFile jf;
-        Enumeration<JarEntry> jarEntries;
-        String entryName;
-
-        // build jar file name
-        jarFileName = packageURL.getFile();
-        jarFileName = jarFileName.substring(5, jarFileName.indexOf("!"));
-        jarFileName = jarFileName.replaceAll("%20", " ");
-        long jarTime = new File(jarFileName).lastModified();
-        File genDirectory = new File(config.getOutputDirectory());
-        long genTime = genDirectory.lastModified();
-        if (genTime >= jarTime) {
-            config.getLog().info("Generated source up to date, skipping");
-            return list;
-        }
-        config.getLog().info("Writing Javascript Overlay files");
-        jf = new JarFile(jarFileName);
-        config.getLog().info("Opening jar " + jarFileName);
-        jarEntries = jf.entries();
-        while (jarEntries.hasMoreElements()) {
-            entryName = jarEntries.nextElement().getName();
-            config.getLog().debug("Entry " + entryName);
-            if (entryName.startsWith(searchPath) && entryName.endsWith(".class")) {
-                String path = entryName.substring(0, entryName.length() - 6);
-                String className = path.substring(path.lastIndexOf('/') + 1);
-                String packageName = path.substring(0, path.lastIndexOf('/')).replace("/", ".");
-                ClassInfo ci = new ClassInfo(config);
-                ci.setPackageName(packageName);
-                ci.setClassName(className);
-                list.add(ci);
+        ClassScanner scanner = createScanner();
+        ClassCollector list = new ClassCollector();
+        Enumeration<URL> urls = loader.getResources(searchPath);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if ("jar".equals(url.getProtocol())) {
+                scanner.scanJar(url, searchPath, list);
             }
         }
-        return list;
+        return list.getClasses();
     }
 
     /**
-     * Recursively search a directory for all matching class files
+     * Recursively search every directory that contains the package for class files
      *
      * @param packageName
      * @param targetDir
@@ -146,45 +282,483 @@ public class JavaScriptOverlayGenerator {
      */
     List<ClassInfo> processDirectory(String packageName, File targetDir) throws ClassNotFoundException, IOException {
         config.getLog().debug("processing directory " + packageName);
-        ArrayList<ClassInfo> list = new ArrayList<ClassInfo>();
-        URL packageURL = loader.getResource(packageName);
-        File folder = new File(packageURL.getFile());
-        File[] contenuti = folder.listFiles();
-        String entryName;
-        for (File actual : contenuti) {
-            if (actual.isDirectory()) {
-                list.addAll(processDirectory(packageName + actual.getName() + "/", targetDir));
-            } else {
-                entryName = actual.getName();
-                if (entryName.endsWith("class")) {
-                    entryName = entryName.substring(0, entryName.lastIndexOf('.'));
-                    ClassInfo ci = new ClassInfo(config);
-                    ci.setPackageName(packageName);
-                    ci.setClassName(entryName);
-                    list.add(ci);
-                }
+        ClassScanner scanner = createScanner();
+        ClassCollector list = new ClassCollector();
+        Enumeration<URL> urls = loader.getResources(packageName);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            if ("file".equals(url.getProtocol())) {
+                scanner.scanDirectory(url, packageName, list);
+            }
+        }
+        return list.getClasses();
+    }
+
+    private ClassScanner createScanner() {
+        return new ClassScanner(config, loader, getRepository());
+    }
+
+    /**
+     * Collects the classes found by a scan
+     */
+    private static class ClassCollector implements ClassScanner.Callback {
+
+        private final List<ClassInfo> classes = new ArrayList<ClassInfo>();
+
+        @Override
+        public void found(ClassInfo classInfo) {
+            classes.add(classInfo);
+        }
+
+        /**
+         * @return the classes in the order they were found
+         */
+        List<ClassInfo> getClasses() {
+            return classes;
+        }
+    }
+
+    /**
+     * Get the model for a class, reading its class file if it was not found by a scan
+     *
+     * @param classInfo
+     * @return
+     * @throws ClassNotFoundException if there is no class file
+     * @throws IOException
+     */
+    private ClassModel getModel(ClassInfo classInfo) throws ClassNotFoundException, IOException {
+        ClassModel model = classInfo.getModel();
+        if (model == null) {
+            model = getRepository().get(classInfo.getOriginalName());
+            if (model == null) {
+                throw new ClassNotFoundException(classInfo.getOriginalName());
             }
+            classInfo.setModel(model);
+        }
+        return model;
+    }
+
+    /**
+     * The type resolver for this run, reading class files from the loader
+     *
+     * @return
+     */
+    synchronized TypeResolver getResolver() {
+        if (resolver == null) {
+            ClassLoader classLoader = loader != null ? loader : config.getClassLoader();
+            ClassRepository repository = new ClassRepository(classLoader, metrics);
+            introspector = new BeanIntrospector(repository);
+            resolver = new TypeResolver(config, repository);
+        }
+        return resolver;
+    }
+
+    /**
+     * The bean properties found in this run
+     *
+     * @return
+     */
+    synchronized BeanIntrospector getIntrospector() {
+        getResolver();
+        return introspector;
+    }
+
+    /**
+     * Start a new run with empty type caches, class files and properties already read are kept
+     */
+    private synchronized void startRun() {
+        resolver = new TypeResolver(config, getRepository());
+        sourceWriter = new SourceWriter(metrics);
+    }
+
+    /**
+     * Writes the generated files of the current run
+     *
+     * @return
+     */
+    synchronized SourceWriter getSourceWriter() {
+        if (sourceWriter == null) {
+            sourceWriter = new SourceWriter(metrics);
         }
-        return list;
+        return sourceWriter;
+    }
+
+    /**
+     * The repository of class files for this run
+     *
+     * @return
+     */
+    ClassRepository getRepository() {
+        return getResolver().getRepository();
     }
 
     /**
-     * Take a List of ClassInfo objects and create the directory for each one, then call writeJso for each ClassInfo
+     * The timers and counters of the last run
+     *
+     * @return
+     */
+    GenerationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Take a List of ClassInfo objects and create the directory for each one, then call writeJso for each ClassInfo.
+     * Classes that have not changed since the last run, according to the {@link GenerationManifest},
+     * are skipped and the files of classes that are gone are deleted.
+     * The classes are generated in parallel by {@link Config#getThreads()} threads.
      *
      * @param ci
      * @throws IOException
      * @throws ClassNotFoundException
      */
-    void writeJso(List<ClassInfo> ci) throws IOException, ClassNotFoundException, IntrospectionException {
-        topPackage = getTopPackage(ci);
-        for (ClassInfo classInfo : ci) {
-            config.getLog().debug("Creating directory " + classInfo.getOutputDirectory().getAbsolutePath());
-            File packageDir = classInfo.getOutputDirectory();
-            packageDir.mkdirs();
-            writeJso(classInfo);
+    void writeJso(List<ClassInfo> ci) throws IOException, ClassNotFoundException {
+        metrics.reset();
+        GenerationRun run = new GenerationRun(getTopPackage(ci), ci.size());
+        try {
+            for (ClassInfo classInfo : ci) {
+                run.submit(classInfo);
+            }
+            run.finish();
+        } finally {
+            run.close();
+        }
+    }
+
+    /**
+     * One run of the generator. Classes are submitted one at a time, out of date
+     * classes are generated on the pool while more are submitted. At most a few
+     * classes per thread are in flight and the methods and properties of a class
+     * are evicted once it is done, only a header per class is kept for hashing.
+     * The manifest is only touched by the submitting thread.
+     */
+    private class GenerationRun {
+
+        private final GenerationManifest manifest;
+        private final ModelCache modelCache;
+        private final ExecutorService executor;
+        private final CompletionService<ClassJob> completion;
+        private final int threads;
+        private final int maxInFlight;
+        private int inFlight;
+        private int total;
+        private int generated;
+
+        /**
+         * @param top the class in the top package, ListHelper is written there
+         * @param classCount the number of classes if known, used to size the pool
+         * @throws IOException 
+         */
+        GenerationRun(ClassInfo top, int classCount) throws IOException {
+            config.validate();
+            startRun();
+            topPackage = top;
+            File outputDirectory = new File(config.getOutputDirectory());
+            String fingerprint = config.getFingerprint() + ",topPackage=" + (topPackage == null ? null : topPackage.getNewPackageName());
+            manifest = GenerationManifest.load(outputDirectory, fingerprint);
+            String cacheDirectory = config.getModelCacheDirectory();
+            modelCache = ModelCache.load(cacheDirectory == null ? null : new File(cacheDirectory), config.getFingerprint());
+            threads = Math.max(1, Math.min(getThreadCount(), classCount));
+            executor = createExecutor(threads);
+            completion = new ExecutorCompletionService<ClassJob>(executor);
+            maxInFlight = threads * 4;
+        }
+
+        /**
+         * Generate a class unless it is up to date
+         */
+        void submit(ClassInfo classInfo) throws IOException, ClassNotFoundException {
+            total++;
+            ClassModel model = getModel(classInfo);
+            GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.MANIFEST);
+            try {
+                if (manifest.isUpToDate(model, getRepository())) {
+                    config.getLog().debug("Up to date " + classInfo.getOriginalName());
+                    modelCache.keep(model, getRepository());
+                    evict(model);
+                    return;
+                }
+            } finally {
+                metrics.exit(outer);
+            }
+            completion.submit(new ClassJob(classInfo, model, modelCache));
+            inFlight++;
+            while (inFlight >= maxInFlight) {
+                collect(take());
+            }
+        }
+
+        private Future<ClassJob> take() throws IOException {
+            // waiting for the pool is not counted in any phase
+            GenerationMetrics.Phase outer = metrics.enter(null);
+            try {
+                return completion.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while generating overlays");
+            } finally {
+                metrics.exit(outer);
+            }
+        }
+
+        private void collect(Future<ClassJob> future) throws IOException, ClassNotFoundException {
+            ClassJob job = getResult(future);
+            inFlight--;
+            generated++;
+            GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.MANIFEST);
+            try {
+                manifest.record(job.model, job.outputs, job.references, getRepository());
+                modelCache.record(job.model, job.references, getIntrospector(), getResolver(), getRepository());
+            } finally {
+                metrics.exit(outer);
+            }
+            evict(job.model);
+        }
+
+        /**
+         * Forget the methods and properties of a class that is done, so memory
+         * does not grow with the number of classes. Classes still being generated
+         * read the class file again if they need it.
+         */
+        private void evict(ClassModel model) {
+            PropertyTable table = getIntrospector().remove(model.getName());
+            if (table != null) {
+                getResolver().remove(table);
+            }
+            getRepository().evict(model.getName());
+        }
+
+        /**
+         * Wait for the classes in flight, delete old output, write ListHelper and the manifest
+         */
+        void finish() throws IOException, ClassNotFoundException {
+            while (inFlight > 0) {
+                collect(take());
+            }
+            GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.MANIFEST);
+            try {
+                for (File deleted : manifest.deleteRemovedOutputs()) {
+                    config.getLog().info("Deleted " + deleted);
+                }
+            } finally {
+                metrics.exit(outer);
+            }
+            outer = metrics.enter(GenerationMetrics.Phase.RENDER);
+            try {
+                writeHelpers();
+            } finally {
+                metrics.exit(outer);
+            }
+            outer = metrics.enter(GenerationMetrics.Phase.MANIFEST);
+            try {
+                manifest.store();
+                if (!modelCache.store()) {
+                    config.getLog().warn("Unable to replace the model cache " + modelCache.getFile());
+                }
+            } finally {
+                metrics.exit(outer);
+            }
+            config.getLog().info("Generated " + generated + " of " + total + " classes, wrote "
+                + getSourceWriter().getWritten() + " files, skipped " + getSourceWriter().getSkipped() + " unchanged files");
+            report();
+        }
+
+        /**
+         * Write the helpers to the top package when a class was generated or one is missing
+         */
+        private void writeHelpers() throws IOException, ClassNotFoundException {
+            if (topPackage != null) {
+                if (config.isJsInterop()) {
+                    if (generated > 0 || !new File(topPackage.getOutputDirectory(), "Json.java").exists()) {
+                        topPackage.getOutputDirectory().mkdirs();
+                        getSourceWriter().write(new File(topPackage.getOutputDirectory(), "Json.java"),
+                            new JsInteropWriter(getResolver(), topPackage).renderJson(topPackage));
+                    }
+                } else if (generated > 0 || !helpersExist(topPackage)) {
+                    topPackage.getOutputDirectory().mkdirs();
+                    writeArrayHelper(topPackage);
+                    writeJsonHelper(topPackage);
+                    writeDateHelper(topPackage);
+                    writeIncrementalParser(topPackage);
+                    writeEnumHelpers(topPackage);
+                    if (config.isTypedLists()) {
+                        for (PrimitiveList list : PrimitiveList.values()) {
+                            writePrimitiveListHelper(topPackage, list);
+                        }
+                    }
+                }
+            }
         }
-        if(topPackage != null){
-            writeArrayHelper(topPackage);
+
+        /**
+         * Log the metrics of the run and write the JSON report if one is configured
+         */
+        private void report() throws IOException {
+            SourceWriter writer = getSourceWriter();
+            metrics.add(GenerationMetrics.Counter.CLASSES_SCANNED, total);
+            metrics.add(GenerationMetrics.Counter.CLASSES_UP_TO_DATE, total - generated);
+            metrics.add(GenerationMetrics.Counter.CLASSES_RESTORED, modelCache.getRestored());
+            metrics.add(GenerationMetrics.Counter.FILES_WRITTEN, writer.getWritten());
+            metrics.add(GenerationMetrics.Counter.FILES_SKIPPED, writer.getSkipped());
+            metrics.add(GenerationMetrics.Counter.BYTES_WRITTEN, writer.getBytesWritten());
+            metrics.logSummary(config.getLog(), threads);
+            if (config.getMetricsReport() != null) {
+                File file = new File(config.getMetricsReport());
+                metrics.writeReport(file, threads);
+                config.getLog().info("Wrote metrics to " + file);
+            }
+        }
+
+        /**
+         * Stop the pool, called even if the run failed
+         */
+        void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The number of threads to generate with
+     *
+     * @return
+     */
+    private int getThreadCount() {
+        return config.getThreads() > 0 ? config.getThreads() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Create the pool used to generate classes
+     *
+     * @param threads
+     * @return
+     */
+    private ExecutorService createExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "js-overlay-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Wait for a job and rethrow its failure with the original exception type
+     *
+     * @param future
+     * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private static ClassJob getResult(Future<ClassJob> future) throws IOException, ClassNotFoundException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating overlays");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Generates one class: introspect, resolve types, render and write.
+     * The properties and types are taken from the model cache when it has them.
+     * Runs on a worker thread, the results are read by the calling thread.
+     */
+    private class ClassJob implements Callable<ClassJob> {
+
+        private final ClassInfo classInfo;
+        private final ClassModel model;
+        private final ModelCache modelCache;
+        private List<File> outputs;
+        private Set<String> references;
+
+        ClassJob(ClassInfo classInfo, ClassModel model, ModelCache modelCache) {
+            this.classInfo = classInfo;
+            this.model = model;
+            this.modelCache = modelCache;
+        }
+
+        @Override
+        public ClassJob call() throws Exception {
+            long start = System.nanoTime();
+            GenerationMetrics.Phase outer;
+            if (!model.isEnum()) {
+                outer = metrics.enter(GenerationMetrics.Phase.MANIFEST);
+                try {
+                    modelCache.restore(model, getRepository(), getIntrospector(), getResolver());
+                } finally {
+                    metrics.exit(outer);
+                }
+            }
+            outer = metrics.enter(GenerationMetrics.Phase.RENDER);
+            try {
+                config.getLog().debug("Creating directory " + classInfo.getOutputDirectory().getAbsolutePath());
+                File packageDir = classInfo.getOutputDirectory();
+                packageDir.mkdirs();
+                outputs = writeJso(classInfo);
+                references = getReferences(model);
+            } finally {
+                metrics.exit(outer);
+            }
+            int properties = model.isEnum() ? 0 : getIntrospector().getProperties(model).size();
+            metrics.recordClass(model.getName(), System.nanoTime() - start, properties);
+            return this;
+        }
+    }
+
+    /**
+     * Gets the names of the classes the output for a class depends on:
+     * its super classes and every type used by its properties.
+     * JDK types are left out, they do not change between builds.
+     *
+     * @param model
+     * @return
+     * @throws IOException
+     */
+    private Set<String> getReferences(ClassModel model) throws IOException {
+        Set<String> references = new TreeSet<String>();
+        for (String superName = model.getSuperName(); superName != null; superName = getRepository().getSuperName(superName)) {
+            if (!superName.startsWith("java.")) {
+                references.add(superName);
+            }
+        }
+        if (!model.isEnum()) {
+            for (PropertyModel property : getIntrospector().getProperties(model)) {
+                if (property.getReadMethod() != null) {
+                    addReferences(property.getReadMethod().getReturnType(), references);
+                }
+                if (property.getWriteMethod() != null) {
+                    addReferences(property.getWriteMethod().getParameterTypes()[0], references);
+                }
+            }
+        }
+        return references;
+    }
+
+    private void addReferences(JavaType type, Set<String> references) {
+        if (type.isArray()) {
+            addReferences(type.getComponentType(), references);
+        } else if (!type.isPrimitive()) {
+            if (!type.getName().startsWith("java.")) {
+                references.add(type.getName());
+            }
+            for (JavaType arg : type.getTypeArguments()) {
+                addReferences(arg, references);
+            }
         }
     }
 
@@ -192,40 +766,94 @@ public class JavaScriptOverlayGenerator {
      * Write java class file to disk
      *
      * @param classInfo
+     * @return the files that were written
      * @throws ClassNotFoundException
      * @throws IOException
-     * @throws IntrospectionException
      */
-    void writeJso(ClassInfo classInfo) throws ClassNotFoundException, IOException, IntrospectionException {
+    List<File> writeJso(ClassInfo classInfo) throws ClassNotFoundException, IOException {
+        List<File> outputs = new ArrayList<File>();
         if (classInfo.getClassName().equals("package_info")) {
             config.getLog().info("Skipping class package_info");
-            return;
+            return outputs;
         }
-        Class<?> cls = classInfo.getOriginalClass();
-        if (cls.isEnum()) {
+        ClassModel model = getModel(classInfo);
+        outputs.add(classInfo.getOutputFile());
+        if (model.isEnum()) {
             writeJavaEnum(classInfo);
-            return;
+            return outputs;
+        }
+        PropertyTable methods = getIntrospector().getProperties(model);
+        if (config.isJsInterop()) {
+            getSourceWriter().write(classInfo.getOutputFile(),
+                new JsInteropWriter(getResolver(), topPackage).render(classInfo, methods, model.isRootElement()));
+            return outputs;
+        }
+        if (config.isGenerateInterface()) {
+            outputs.add(getInterfaceFile(classInfo));
         }
-        PropertyDescriptor[] methods = getMethods(cls);
         generateInferfaces(classInfo, methods);
-        BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(classInfo.getOutputFile()));
-        PrintStream ps = new PrintStream(fos);
-        ps.printf("package %s;%n", classInfo.getNewPackageName());
-        ps.printf("public class %sJso extends com.google.gwt.core.client.JavaScriptObject %s{%n", classInfo.getClassName(), config.isGenerateInterface() ? "implements I" + classInfo.getClassName() : "");
-        ps.printf("  protected %sJso(){}%n", classInfo.getClassName());
-        for (PropertyDescriptor propDescriptor : methods) {
-            writeReadFunction(propDescriptor.getReadMethod(), ps);
-            writeWriteFunction(propDescriptor.getWriteMethod(), ps);
-        }
-        generateEvalMethods(classInfo, cls, ps);
+        CodeWriter out = CodeWriter.forThread();
+        out.printf("package %s;%n", classInfo.getNewPackageName());
+        out.printf("public class %sJso extends com.google.gwt.core.client.JavaScriptObject %s{%n", classInfo.getClassName(), config.isGenerateInterface() ? "implements I" + classInfo.getClassName() : "");
+        out.printf("  protected %sJso(){}%n", classInfo.getClassName());
+        for (PropertyModel property : methods) {
+            writeReadFunction(property.getReadMethod(), out);
+            writeWriteFunction(property.getWriteMethod(), out);
+        }
+        generateEvalMethods(classInfo, model, out);
+        generateFactory(classInfo, methods, out);
         String genInterface = config.isGenerateInterface() ? "  @Override" : "";
-        ps.printf("%s%n  public final native java.lang.String _getClassName()/*-{return '%s';}-*/;%n", genInterface, classInfo.getNewPackageName() + "." + classInfo.getClassName() + "Jso");
-        // create getJson function
-        ps.printf("%s%n  public final String _getJsonString(){%n    return new com.google.gwt.json.client.JSONObject(this).toString();%n  }%n", genInterface);
+        out.printf("%s%n  public final native java.lang.String _getClassName()/*-{return '%s';}-*/;%n", genInterface, classInfo.getNewPackageName() + "." + classInfo.getClassName() + "Jso");
+        // create getJson functions, serialized by the browser without GWT's JSON wrappers
+        out.printf("%s%n  public final native java.lang.String _getJsonString()/*-{return JSON.stringify(this);}-*/;%n", genInterface);
+        out.printf("%s%n  public final java.lang.String _getJsonString(com.google.gwt.core.client.JsArrayString keys, boolean datesAsMillis){%n"
+            + "    return %s.JsonHelper.stringify(this, keys, datesAsMillis, _dateSchema());%n  }%n", genInterface, topPackage.getNewPackageName());
+        generateDateSchema(methods, out);
 
-        ps.printf("}%n");
-        ps.close();
-        fos.close();
+        out.printf("}%n");
+        getSourceWriter().write(classInfo.getOutputFile(), out.toBytes());
+        return outputs;
+    }
+
+    /**
+     * Write the date schema JsonHelper follows to write dates as epoch millis: the
+     * date properties map to true, the properties holding overlays or arrays of
+     * overlays map to a function returning the schema of that overlay.
+     *
+     * @param methods
+     * @param out
+     */
+    private void generateDateSchema(PropertyTable methods, CodeWriter out) throws IOException {
+        out.printf("  private static com.google.gwt.core.client.JavaScriptObject dateSchema;%n");
+        out.printf("  public static com.google.gwt.core.client.JavaScriptObject _dateSchema(){%n"
+            + "    if(dateSchema == null){%n      dateSchema = _createDateSchema();%n    }%n"
+            + "    return dateSchema;%n  }%n");
+        out.printf("  private static native com.google.gwt.core.client.JavaScriptObject _createDateSchema()/*-{%n    return {");
+        String separator = "";
+        for (PropertyModel property : methods) {
+            MethodModel method = property.getReadMethod() != null ? property.getReadMethod() : property.getWriteMethod();
+            ReturnType type = getResolver().getType(method);
+            String overlay = getOverlayName(type);
+            if (type.isDate() || overlay != null) {
+                out.printf("%s%n      \"%s\": %s", separator, ReturnType.getPropertyName(method.getName()),
+                    type.isDate() ? "true" : "function(){return @" + overlay + "::_dateSchema()();}");
+                separator = ",";
+            }
+        }
+        out.printf(separator.length() == 0 ? "};%n  }-*/;%n" : "%n    };%n  }-*/;%n");
+    }
+
+    /**
+     * @return the jso name of the overlay a property holds, or of the elements of
+     * an array or list property, null if it holds no overlay
+     */
+    private static String getOverlayName(ReturnType type) {
+        String jsoName = type.getJsoName();
+        if (jsoName == null || !jsoName.endsWith("Jso") || type.isDate() || type.isEnum()
+            || type.isParameterTypeEnum() || type.isPrimitiveList()) {
+            return null;
+        }
+        return jsoName;
     }
 
     /**
@@ -234,35 +862,50 @@ public class JavaScriptOverlayGenerator {
      * @param method
      * @param ps
      */
-    void writeReadFunction(Method method, PrintStream ps) {
+    void writeReadFunction(MethodModel method, CodeWriter out) throws IOException {
         if (method == null) {
             return;
         }
-        ReturnType returnType = ReturnType.getType(method);
+        ReturnType returnType = getResolver().getType(method);
         String methodName = method.getName();
-        String lowerMethodName = returnType.getPropertyName(methodName);
+        String lowerMethodName = ReturnType.getPropertyName(methodName);
         String override = config.isGenerateInterface() ? "@Override" : "";
         if (returnType.isEnum()) {
             if (returnType.isArray()) {
-                readEnumList(ps, returnType, methodName, lowerMethodName);
+                readEnumList(out, returnType, methodName, lowerMethodName);
             } else {
-                ps.printf("  private final native java.lang.String _%s()/*-{return this[\"%s\"];}-*/;%n", methodName, lowerMethodName);
-                ps.printf("  %s%n  public final %s %s(){%n    return %s.valueOf(_%s());    %n  }%n", override, returnType.getQualifiedReturnType(topPackage), methodName, returnType.getName(), methodName);
+                out.printf("  private final native java.lang.String _%s()/*-{return this[\"%s\"];}-*/;%n", methodName, lowerMethodName);
+                out.printf("  %s%n  public final %s %s(){%n    return %s.fromName(_%s());    %n  }%n", override, returnType.getQualifiedReturnType(topPackage), methodName, returnType.getName(), methodName);
             }
+        } else if (returnType.isEpochMillis()) {
+            out.printf("  %s%n  public final double %s(){%n    return %s.DateHelper.getMillis(this, \"%s\");%n  }%n",
+                override, methodName, topPackage.getNewPackageName(), lowerMethodName);
         } else if (returnType.isDate()) {
-            ps.printf("  %s%n  public final native java.lang.String %s()/*-{return new String(this[\"%s\"]);}-*/;%n", override, methodName, lowerMethodName);
+            out.printf("  %s%n  public final native java.lang.String %s()/*-{return new String(this[\"%s\"]);}-*/;%n", override, methodName, lowerMethodName);
+        } else if (returnType.isPrimitiveList() && config.isLazyLists()) {
+            out.printf("  %s%n  public final %s %s(){%n", override, returnType.getQualifiedReturnType(topPackage), methodName);
+            out.printf("    return new %s(this, \"%s\");%n  }%n", returnType.getQualifiedReturnType(topPackage), lowerMethodName);
+        } else if (returnType.isPrimitiveList()) {
+            out.printf("  private final native %s _%s()/*-{"
+                + "if(this[\"%s\"] === undefined){this[\"%s\"]=new Array();}%n"
+                + "return this[\"%s\"];}-*/;%n", returnType.getPrimitiveList().getQualifiedArrayName(), methodName, lowerMethodName, lowerMethodName, lowerMethodName);
+            out.printf("  %s%n  public final %s %s(){%n", override, returnType.getQualifiedReturnType(topPackage), methodName);
+            out.printf("    return new %s(_%s());%n  }%n", returnType.getQualifiedReturnType(topPackage), methodName);
         } else if (returnType.isList()) {
             if (returnType.isParameterTypeEnum()) {
-                readEnumList(ps, returnType, methodName, lowerMethodName);
+                readEnumList(out, returnType, methodName, lowerMethodName);
+            } else if (config.isLazyLists()) {
+                out.printf("  %s%n  public final %s %s(){%n", override, returnType.getQualifiedReturnType(topPackage), methodName);
+                out.printf("    return new %s(this, \"%s\", %s._dateSchema());%n    }%n", returnType.getQualifiedReturnType(topPackage), lowerMethodName, returnType.getJsoName());
             } else {
-                ps.printf("  private final native com.google.gwt.core.client.JsArray<com.google.gwt.core.client.JavaScriptObject> _%s()/*-{"
+                out.printf("  private final native com.google.gwt.core.client.JsArray<com.google.gwt.core.client.JavaScriptObject> _%s()/*-{"
                     + "if(this[\"%s\"] === undefined){this[\"%s\"]=new Array();}%n"
                     + "return this[\"%s\"];}-*/;%n", methodName, lowerMethodName,lowerMethodName,lowerMethodName);
-                ps.printf("  %s%n  public final %s %s(){%n", override, returnType.getQualifiedReturnType(topPackage), methodName);
-                ps.printf("    return new %s(_%s());%n    }%n", returnType.getQualifiedReturnType(topPackage), methodName);
+                out.printf("  %s%n  public final %s %s(){%n", override, returnType.getQualifiedReturnType(topPackage), methodName);
+                out.printf("    return new %s(_%s(), %s._dateSchema());%n    }%n", returnType.getQualifiedReturnType(topPackage), methodName, returnType.getJsoName());
             }
         } else {
-            ps.printf("  %s%n  public final native %s %s()/*-{return this[\"%s\"];}-*/;%n", override, returnType.getQualifiedReturnImplType(topPackage), methodName, lowerMethodName);
+            out.printf("  %s%n  public final native %s %s()/*-{return this[\"%s\"];}-*/;%n", override, returnType.getQualifiedReturnImplType(topPackage), methodName, lowerMethodName);
         }
     }
 
@@ -274,32 +917,61 @@ public class JavaScriptOverlayGenerator {
      * @param methodName
      * @param lowerMethodName
      */
-    private void readEnumList(PrintStream ps, ReturnType returnType, String methodName, String lowerMethodName) {
+    private void readEnumList(CodeWriter out, ReturnType returnType, String methodName, String lowerMethodName) {
         if (config.isGenerateInterface()) {
-            ps.printf("  @Override%n");
+            out.printf("  @Override%n");
         }
+        String helper = topPackage.getNewPackageName() + ".EnumHelper";
+        String enumType = returnType.getParameterType();
         if (returnType.isArray()) {
-            ps.printf("  public final %s %s(){%n"
+            // one converted array per javascript array, shared by the readers so a repeated
+            // read does not allocate. Each element is checked against its name, which follows
+            // in-place edits of the javascript array and undoes edits of the returned array
+            out.printf("  public final %s %s(){%n"
                 + "    java.lang.String[] data = _%s();%n"
-                + "    %s[] retData = new %s[data.length];%n"
+                + "    if(data == null){%n      return null;%n    }%n"
+                + "    %s[] cached = (%s[]) %s.getView(this, \"%s\", data);%n"
+                + "    if(cached == null || cached.length != data.length){%n"
+                + "      cached = new %s[data.length];%n"
+                + "      %s.setView(this, \"%s\", data, cached);%n"
+                + "    }%n"
                 + "    for(int i=0; i<data.length; i++){%n"
-                + "      retData[i] = %s.valueOf(data[i]);%n"
+                + "      if(cached[i] == null || !cached[i].name().equals(data[i])){%n"
+                + "        cached[i] = %s.fromName(data[i]);%n"
+                + "      }%n"
                 + "    }%n"
-                + "    return retData;%n  }%n",
+                + "    return cached;%n  }%n",
                 returnType.getQualifiedReturnType(topPackage),
                 methodName,
                 methodName,
-                returnType.getParameterType(),
-                returnType.getParameterType(),
-                returnType.getParameterType());
-            ps.printf("  public final native java.lang.String[] _%s()/*-{return this[\"%s\"];}-*/;%n", methodName, lowerMethodName);
+                enumType, enumType, helper, lowerMethodName,
+                enumType,
+                helper, lowerMethodName,
+                enumType);
+            out.printf("  public final native java.lang.String[] _%s()/*-{return this[\"%s\"];}-*/;%n", methodName, lowerMethodName);
         } else {
-            ps.printf("  public final %s %s(){%n", returnType.getQualifiedReturnType(topPackage), methodName);
-            ps.printf("    return new %s(_%s());%n",returnType.getQualifiedReturnType(topPackage), methodName);
-            ps.printf("  }%n");
-            ps.printf("  public final native com.google.gwt.core.client.JsArray _%s()/*-{"
-                + "if(this[\"%s\"] === undefined){this[\"%s\"]=new Array();}%n"
-                + "return this[\"%s\"];}-*/;%n", methodName, lowerMethodName,lowerMethodName,lowerMethodName);
+            // one view per javascript array, it converts each element once
+            String view = topPackage.getNewPackageName() + ".EnumListHelper<" + enumType + ">";
+            out.printf("  public final %s %s(){%n", returnType.getQualifiedReturnType(topPackage), methodName);
+            out.printf("    com.google.gwt.core.client.JsArrayString data = _%s();%n", methodName);
+            if (config.isLazyLists()) {
+                // an empty view that creates the array on the first add or set
+                out.printf("    if(data == null){%n      return new %s(this, \"%s\", %s.lookup());%n    }%n", view, lowerMethodName, enumType);
+            }
+            out.printf("    %s view = (%s) %s.getView(this, \"%s\", data);%n", view, view, helper, lowerMethodName);
+            out.printf("    if(view == null){%n      view = new %s(data, %s.lookup());%n", view, enumType);
+            out.printf("      %s.setView(this, \"%s\", data, view);%n    }%n", helper, lowerMethodName);
+            out.printf("    return view;%n");
+            out.printf("  }%n");
+            if (config.isLazyLists()) {
+                out.printf("  public final native com.google.gwt.core.client.JsArrayString _%s()/*-{"
+                    + "var value = this[\"%s\"];%n"
+                    + "return value === undefined ? null : value;}-*/;%n", methodName, lowerMethodName);
+            } else {
+                out.printf("  public final native com.google.gwt.core.client.JsArrayString _%s()/*-{"
+                    + "if(this[\"%s\"] === undefined){this[\"%s\"]=new Array();}%n"
+                    + "return this[\"%s\"];}-*/;%n", methodName, lowerMethodName,lowerMethodName,lowerMethodName);
+            }
         }
     }
 
@@ -311,26 +983,21 @@ public class JavaScriptOverlayGenerator {
      * @param methodName
      * @param lowerMethodName
      */
-    private void writeEnumList(PrintStream ps, ReturnType type, String methodName, String lowerMethodName) {
-        ps.printf("  public final native void _%s(java.lang.String[] value )/*-{this[\"%s\"] = value;}-*/;%n", methodName, lowerMethodName);
+    private void writeEnumList(CodeWriter out, ReturnType type, String methodName, String lowerMethodName) {
         if (config.isGenerateInterface()) {
-            ps.printf("  @Override%n");
+            out.printf("  @Override%n");
         }
         if (type.isArray()) {
-            ps.printf("  public final void %s(%s[] value){%n"
-                + "    java.lang.String[] data = new String[value.length];%n"
-                + "    for(int i=0; i<data.length; i++){%n"
-                + "      data[i] = value[i].name();%n"
-                + "    }%n"
-                + "    _%s(data);%n  }%n", methodName, type.getParameterType(), methodName);
+            out.printf("  public final void %s(%s[] value){%n"
+                + "    _%s(value == null ? null : %s.EnumHelper.names(value, 0, value.length));%n  }%n",
+                methodName, type.getParameterType(), methodName, topPackage.getNewPackageName());
         } else {
-            ps.printf("  public final void %s(%s value){%n"
-                + "    java.lang.String[] data = new String[value.length()];%n"
-                + "    for(int i=0; i<data.length; i++){%n"
-                + "      data[i] = value.get(i).name();%n"
-                + "    }%n"
-                + "    _%s(data);%n  }%n", methodName, type.getQualifiedReturnType(topPackage), methodName);
+            // the views are backed by a javascript array of names, stored as is
+            out.printf("  public final void %s(%s value){%n"
+                + "    _%s(value == null ? null : %s.EnumHelper.names(value));%n  }%n",
+                methodName, type.getQualifiedReturnType(topPackage), methodName, topPackage.getNewPackageName());
         }
+        out.printf("  public final native void _%s(com.google.gwt.core.client.JsArrayString value )/*-{this[\"%s\"] = value;}-*/;%n", methodName, lowerMethodName);
     }
 
     /**
@@ -339,47 +1006,59 @@ public class JavaScriptOverlayGenerator {
      * @param method
      * @param ps
      */
-    void writeWriteFunction(Method method, PrintStream ps) {
+    void writeWriteFunction(MethodModel method, CodeWriter out) throws IOException {
         if (method == null) {
             return;
         }
-        ReturnType paramType = ReturnType.getType(method);
+        ReturnType paramType = getResolver().getType(method);
         String methodName = method.getName();
-        String lowerMethodName = paramType.getPropertyName(methodName);
+        String lowerMethodName = ReturnType.getPropertyName(methodName);
         String override = config.isGenerateInterface() ? "@Override" : "";
         if (paramType.isEnum() && paramType.isArray()) {
-            writeEnumList(ps, paramType, methodName, lowerMethodName);
+            writeEnumList(out, paramType, methodName, lowerMethodName);
         } else if (paramType.isEnum()) {
-            ps.printf("  %s%n  public final void %s(%s value){%n    _%s(value.name());    %n  }%n", override, methodName, paramType.getName(), methodName);
-            ps.printf("  public final native void _%s(java.lang.String value)/*-{this[\"%s\"] = value;}-*/;%n", methodName, lowerMethodName);
+            out.printf("  %s%n  public final void %s(%s value){%n    _%s(value.name());    %n  }%n", override, methodName, paramType.getName(), methodName);
+            out.printf("  public final native void _%s(java.lang.String value)/*-{this[\"%s\"] = value;}-*/;%n", methodName, lowerMethodName);
+        } else if (paramType.isEpochMillis()) {
+            out.printf("  %s%n  public final void %s(double value){%n    %s.DateHelper.setMillis(this, \"%s\", value);%n  }%n",
+                override, methodName, topPackage.getNewPackageName(), lowerMethodName);
+        } else if (paramType.isPrimitiveList()) {
+            // store the helper's array so later changes through the helper are seen
+            out.printf("  %s%n  public final void %s(%s value){%n    _%s(value == null ? null : value.getArray());%n  }%n",
+                override, methodName, paramType.getQualifiedReturnType(topPackage), methodName);
+            out.printf("  private final native void _%s(%s value)/*-{this[\"%s\"] = value;}-*/;%n",
+                methodName, paramType.getPrimitiveList().getQualifiedArrayName(), lowerMethodName);
         } else if(paramType.isList()){
             if(paramType.isParameterTypeEnum()){
-                writeEnumList(ps, paramType, methodName, lowerMethodName);
+                writeEnumList(out, paramType, methodName, lowerMethodName);
             }else{
-                ps.printf("  %s%n  public final native void %s(%s value)/*-{this[\"%s\"] = value;}-*/;%n", override, methodName, paramType.getQualifiedReturnType(topPackage), lowerMethodName);
+                // store the helper's array, the helper itself is a java object
+                out.printf("  %s%n  public final void %s(%s value){%n    _%s(value == null ? null : value.getArray());%n  }%n",
+                    override, methodName, paramType.getQualifiedReturnType(topPackage), methodName);
+                out.printf("  private final native void _%s(com.google.gwt.core.client.JavaScriptObject value)/*-{this[\"%s\"] = value;}-*/;%n",
+                    methodName, lowerMethodName);
             }
         }else {
-            ps.printf("  %s%n  public final native void %s(%s value)/*-{this[\"%s\"] = value;}-*/;%n", override, methodName, paramType.getQualifiedReturnType(topPackage), lowerMethodName);
+            out.printf("  %s%n  public final native void %s(%s value)/*-{this[\"%s\"] = value;}-*/;%n", override, methodName, paramType.getQualifiedReturnType(topPackage), lowerMethodName);
         }
     }
 
     /**
-     * Gets the declared methods in a class and returns an array of methods for all bean properties (get/set)
-     *
-     * If only getters exist they will be ignored
+     * Gets the bean properties (get/set) of a class from its class file
      *
      * @param cls
      * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
      */
-    PropertyDescriptor[] getMethods(Class cls) throws IntrospectionException {
-        BeanInfo beanInfo = Introspector.getBeanInfo(cls, Object.class);
-        PropertyDescriptor[] methodDescriptors = beanInfo.getPropertyDescriptors();
-
-        return methodDescriptors;
+    PropertyTable getMethods(Class cls) throws IOException, ClassNotFoundException {
+        return getIntrospector().getProperties(cls.getName());
     }
 
-    void setLoader(ClassLoader classLoader) {
+    synchronized void setLoader(ClassLoader classLoader) {
         this.loader = classLoader;
+        this.resolver = null;
+        this.introspector = null;
     }
 
     /**
@@ -388,27 +1067,31 @@ public class JavaScriptOverlayGenerator {
      * @param classInfo
      */
     private void writeJavaEnum(ClassInfo classInfo) throws ClassNotFoundException, IOException {
-        Class<?> cls = classInfo.getOriginalClass();
-        BufferedOutputStream fos = null;
-        PrintStream ps = null;
-        try {
-            fos = new BufferedOutputStream(new FileOutputStream(classInfo.getOutputFile()));
-            ps = new PrintStream(fos);
-            ps.printf("package %s;%n", classInfo.getNewPackageName());
-            ps.printf("public enum %s {%n", classInfo.getClassName());
-            Object[] enumConstants = cls.getEnumConstants();
-            for (int i = 0; i < enumConstants.length; i++) {
-                Object object = enumConstants[i];
-                ps.print(object);
-                if (i < enumConstants.length - 1) {
-                    ps.print(",");
-                }
+        List<String> enumConstants = getModel(classInfo).getEnumConstants();
+        CodeWriter out = CodeWriter.forThread();
+        out.printf("package %s;%n", classInfo.getNewPackageName());
+        out.printf("public enum %s {%n", classInfo.getClassName());
+        for (int i = 0; i < enumConstants.size(); i++) {
+            out.print(enumConstants.get(i));
+            if (i < enumConstants.size() - 1) {
+                out.print(",");
             }
-            ps.printf(";%n}%n");
-        } finally {
-            ps.close();
-            fos.close();
         }
+        out.printf(";%n");
+        // constants by name, built once so reads from javascript do not search or allocate
+        String name = classInfo.getClassName();
+        out.printf("  private static final java.util.Map<String, %s> LOOKUP;%n", name);
+        out.printf("  static {%n    java.util.Map<String, %s> lookup = new java.util.HashMap<String, %s>();%n", name, name);
+        out.printf("    for(%s value : values()){%n      lookup.put(value.name(), value);%n    }%n", name);
+        out.printf("    LOOKUP = java.util.Collections.unmodifiableMap(lookup);%n  }%n");
+        out.printf("  public static %s fromName(String name){%n"
+            + "    if(name == null){%n      return null;%n    }%n"
+            + "    %s value = LOOKUP.get(name);%n"
+            + "    if(value == null){%n      throw new IllegalArgumentException(\"No enum constant %s.\" + name);%n    }%n"
+            + "    return value;%n  }%n", name, name, name);
+        out.printf("  public static java.util.Map<String, %s> lookup(){%n    return LOOKUP;%n  }%n", name);
+        out.printf("}%n");
+        getSourceWriter().write(classInfo.getOutputFile(), out.toBytes());
     }
 
     /**
@@ -417,19 +1100,20 @@ public class JavaScriptOverlayGenerator {
      * @param methods
      * @param ps
      */
-    private void generateInterface(PropertyDescriptor[] methods, PrintStream ps) {
-        ps.printf("  java.lang.String _getJsonString();%n");
-        ps.printf("  java.lang.String _getClassName();%n");
-        for (PropertyDescriptor propertyDescriptor : methods) {
-            Method method = propertyDescriptor.getReadMethod();
+    private void generateInterface(PropertyTable methods, CodeWriter out) throws IOException {
+        out.printf("  java.lang.String _getJsonString();%n");
+        out.printf("  java.lang.String _getJsonString(com.google.gwt.core.client.JsArrayString keys, boolean datesAsMillis);%n");
+        out.printf("  java.lang.String _getClassName();%n");
+        for (PropertyModel property : methods) {
+            MethodModel method = property.getReadMethod();
             if (method != null) {
-                ReturnType returnType = ReturnType.getType(method);
-                ps.printf("  %s %s();%n", returnType.getQualifiedReturnType(topPackage), method.getName());
+                ReturnType returnType = getResolver().getType(method);
+                out.printf("  %s %s();%n", returnType.getQualifiedReturnType(topPackage), method.getName());
             }
-            method = propertyDescriptor.getWriteMethod();
+            method = property.getWriteMethod();
             if (method != null) {
-                ReturnType paramType = ReturnType.getType(method);
-                ps.printf("  void %s(%s value);%n", method.getName(), paramType.getQualifiedReturnType(topPackage));
+                ReturnType paramType = getResolver().getType(method);
+                out.printf("  void %s(%s value);%n", method.getName(), paramType.getQualifiedReturnType(topPackage));
             }
         }
     }
@@ -441,24 +1125,443 @@ public class JavaScriptOverlayGenerator {
      * @param list
      */
     private void writeArrayHelper(ClassInfo packageInfo) throws ClassNotFoundException, IOException {
-        BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(new File(packageInfo.getOutputDirectory(), "ListHelper.java")));
-        PrintStream ps = new PrintStream(fos);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
         ps.printf("package %s;%n", packageInfo.getNewPackageName());
         ps.printf("import com.google.gwt.core.client.JavaScriptObject;%n");
-        ps.printf("import com.google.gwt.core.client.JsArray;%n%n");
+        ps.printf("import com.google.gwt.core.client.JsArray;%n");
+        ps.printf("import com.google.gwt.core.client.JsArrayString;%n%n");
         ps.printf("public class ListHelper<T>{%n");
+        ps.printf("  /**%n   * Shared by every list that has not been created yet, frozen so it stays empty%n   */%n");
+        ps.printf("  private static JavaScriptObject empty;%n");
         ps.printf("  private JsArray<JavaScriptObject> array = null;%n");
+        ps.printf("  private JavaScriptObject owner;%n");
+        ps.printf("  private String property;%n");
+        ps.printf("  /**%n   * The date schema of the elements for JsonHelper, null if not known%n   */%n");
+        ps.printf("  private JavaScriptObject dateSchema;%n");
         ps.printf("  public ListHelper(JsArray<JavaScriptObject> array){%n    this.array = array;%n  }%n%n");
-        ps.printf("  public ListHelper(JavaScriptObject[] value){%n    array = (JsArray)JsArray.createArray();%n    for(JavaScriptObject o: value){%n      array.push(o);%n    }%n  }%n%n");
-        ps.printf("  public T get(int index){%n    return (T)array.get(index);%n  }%n%n");
-        ps.printf("  public void add(T obj){%n    array.push((JavaScriptObject)obj);%n  }%n%n");
-        ps.printf("  public void set(int index, T obj){%n    array.set(index, (JavaScriptObject)obj);%n  }%n%n");
-        ps.printf("  public int length(){%n    return array.length();%n    }%n%n");
+        ps.printf("  public ListHelper(JsArray<JavaScriptObject> array, JavaScriptObject dateSchema){%n"
+            + "    this.array = array;%n    this.dateSchema = dateSchema;%n  }%n%n");
+        ps.printf("  public ListHelper(JavaScriptObject[] value){%n    array = (JsArray)JsArray.createArray();%n    copy(value, 0, value.length, array, 0);%n  }%n%n");
+        ps.printf("  /**%n   * A view of a list property of an overlay. Reading does not change the overlay,%n"
+            + "   * the array is created on the first add or set.%n   */%n");
+        ps.printf("  public ListHelper(JavaScriptObject owner, String property){%n"
+            + "    this.owner = owner;%n    this.property = property;%n"
+            + "    array = getProperty(owner, property).cast();%n  }%n%n");
+        ps.printf("  public ListHelper(JavaScriptObject owner, String property, JavaScriptObject dateSchema){%n"
+            + "    this(owner, property);%n    this.dateSchema = dateSchema;%n  }%n%n");
+        ps.printf("  public T get(int index){%n    return (T)array().get(index);%n  }%n%n");
+        ps.printf("  public void add(T obj){%n    writable().push((JavaScriptObject)obj);%n  }%n%n");
+        ps.printf("  public void set(int index, T obj){%n    writable().set(index, (JavaScriptObject)obj);%n  }%n%n");
+        ps.printf("  public int length(){%n    return array().length();%n    }%n%n");
+        ps.printf("  /**%n   * Copy every element into the target array, starting at offset%n   */%n");
+        ps.printf("  public void copyInto(T[] target, int offset){%n"
+            + "    JsArray<JavaScriptObject> source = array();%n"
+            + "    checkRange(offset, offset + source.length(), target.length);%n"
+            + "    copy(source, 0, source.length(), target, offset);%n  }%n%n");
+        ps.printf("  /**%n   * Replace the elements with source[from] to source[to - 1]%n   */%n");
+        ps.printf("  public void setFrom(T[] source, int from, int to){%n"
+            + "    checkRange(from, to, source.length);%n"
+            + "    JsArray<JavaScriptObject> target = writable();%n"
+            + "    target.setLength(0);%n"
+            + "    copy(source, from, to, target, 0);%n  }%n%n");
+        ps.printf("  /**%n   * @return the javascript array of the list, null if it has not been created yet%n   */%n");
+        ps.printf("  public JavaScriptObject getArray(){%n    return array() == empty ? null : array;%n  }%n%n");
+        ps.printf("  /**%n   * The array of the list. Until it is created the property is read again,%n"
+            + "   * so a view sees the array created by another view of the same property.%n   */%n");
+        ps.printf("  protected JsArray<JavaScriptObject> array(){%n"
+            + "    if(owner != null && array == empty){%n      array = getProperty(owner, property).cast();%n    }%n"
+            + "    return array;%n  }%n%n");
+        ps.printf("  protected JsArray<JavaScriptObject> writable(){%n"
+            + "    if(owner != null && array() == empty){%n      array = (JsArray)JsArray.createArray();%n      setProperty(owner, property, array);%n    }%n"
+            + "    return array;%n  }%n%n");
+        ps.printf("  static JavaScriptObject empty(){%n    if(empty == null){%n      empty = createEmpty();%n    }%n    return empty;%n  }%n%n");
+        ps.printf("  static native JavaScriptObject getProperty(JavaScriptObject owner, String property)/*-{%n"
+            + "    var value = owner[property];%n"
+            + "    return value === undefined || value === null ? @%s.ListHelper::empty()() : value;%n  }-*/;%n%n", packageInfo.getNewPackageName());
+        ps.printf("  static native void setProperty(JavaScriptObject owner, String property, JavaScriptObject value)/*-{%n"
+            + "    owner[property] = value;%n  }-*/;%n%n");
+        ps.printf("  static void checkRange(int from, int to, int length){%n"
+            + "    if(from < 0 || from > to || to > length){%n"
+            + "      throw new IndexOutOfBoundsException(\"from \" + from + \", to \" + to + \", length \" + length);%n    }%n  }%n%n");
+        ps.printf("  /**%n   * Copy source[from] to source[to - 1] into target starting at offset, in one javascript loop.%n"
+            + "   * Java arrays are javascript arrays once compiled, so no element is converted.%n   */%n");
+        ps.printf("  static native void copy(Object source, int from, int to, Object target, int offset)/*-{%n"
+            + "    for(var i = from; i < to; i++){%n      target[offset++] = source[i];%n    }%n  }-*/;%n%n");
+        ps.printf("  private static native JavaScriptObject createEmpty()/*-{%n"
+            + "    return Object.freeze ? Object.freeze([]) : [];%n  }-*/;%n%n");
+        ps.printf("  public String _getJsonString(){%n    return JsonHelper.stringify(array());%n  }%n%n");
+        ps.printf("  public String _getJsonString(JsArrayString keys, boolean datesAsMillis){%n    return JsonHelper.stringify(array(), keys, datesAsMillis, dateSchema);%n  }%n%n");
         ps.printf("}");
         ps.close();
-        fos.close();
+        getSourceWriter().write(new File(packageInfo.getOutputDirectory(), "ListHelper.java"), bos.toByteArray());
+    }
+
+    /**
+     * True if every helper class is in the top package
+     *
+     * @param packageInfo
+     * @return
+     */
+    private boolean helpersExist(ClassInfo packageInfo) {
+        File dir = packageInfo.getOutputDirectory();
+        for (String helper : HELPERS) {
+            if (!new File(dir, helper).exists()) {
+                return false;
+            }
+        }
+        if (!config.isTypedLists()) {
+            return true;
+        }
+        for (PrimitiveList list : PrimitiveList.values()) {
+            if (!new File(dir, list.getHelperName() + ".java").exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write a list helper backed by a typed javascript array, values are read
+     * and written in place without boxing
+     *
+     * @param packageInfo
+     * @param list
+     * @throws IOException
+     */
+    private void writePrimitiveListHelper(ClassInfo packageInfo, PrimitiveList list) throws IOException {
+        String helper = list.getHelperName();
+        String array = list.getArrayName();
+        String value = list.getValueType();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
+        ps.printf("package %s;%n", packageInfo.getNewPackageName());
+        ps.printf("import com.google.gwt.core.client.JavaScriptObject;%n");
+        ps.printf("import com.google.gwt.core.client.%s;%n", array);
+        if (list != PrimitiveList.STRING) {
+            ps.printf("import com.google.gwt.core.client.JsArrayString;%n");
+        }
+        ps.printf("%n");
+        ps.printf("public class %s{%n", helper);
+        ps.printf("  private %s array;%n", array);
+        ps.printf("  private JavaScriptObject owner;%n");
+        ps.printf("  private String property;%n");
+        ps.printf("  public %s(%s array){%n    this.array = array;%n  }%n%n", helper, array);
+        ps.printf("  public %s(){%n    this((%s)%s.createArray());%n  }%n%n", helper, array, array);
+        ps.printf("  /**%n   * A view of a list property of an overlay, the array is created on the first add or set%n   */%n");
+        ps.printf("  public %s(JavaScriptObject owner, String property){%n"
+            + "    this.owner = owner;%n    this.property = property;%n"
+            + "    array = ListHelper.getProperty(owner, property).cast();%n  }%n%n", helper);
+        ps.printf("  public %s get(int index){%n    return array().get(index);%n  }%n%n", value);
+        ps.printf("  public void add(%s value){%n    writable().push(value);%n  }%n%n", value);
+        ps.printf("  public void set(int index, %s value){%n    writable().set(index, value);%n  }%n%n", value);
+        ps.printf("  public int length(){%n    return array().length();%n  }%n%n");
+        ps.printf("  /**%n   * Copy every value into the target array, starting at offset%n   */%n");
+        ps.printf("  public void copyInto(%s[] target, int offset){%n"
+            + "    %s source = array();%n"
+            + "    ListHelper.checkRange(offset, offset + source.length(), target.length);%n"
+            + "    ListHelper.copy(source, 0, source.length(), target, offset);%n  }%n%n", value, array);
+        ps.printf("  /**%n   * Replace the values with source[from] to source[to - 1]%n   */%n");
+        ps.printf("  public void setFrom(%s[] source, int from, int to){%n"
+            + "    ListHelper.checkRange(from, to, source.length);%n"
+            + "    %s target = writable();%n"
+            + "    target.setLength(0);%n"
+            + "    ListHelper.copy(source, from, to, target, 0);%n  }%n%n", value, array);
+        ps.printf("  /**%n   * @return the javascript array of the list, null if it has not been created yet%n   */%n");
+        ps.printf("  public %s getArray(){%n    return array() == ListHelper.empty() ? null : array;%n  }%n%n", array);
+        ps.printf("  /**%n   * The array of the list, the property is read again until it is created%n   */%n");
+        ps.printf("  private %s array(){%n"
+            + "    if(owner != null && array == ListHelper.empty()){%n      array = ListHelper.getProperty(owner, property).cast();%n    }%n"
+            + "    return array;%n  }%n%n", array);
+        ps.printf("  private %s writable(){%n"
+            + "    if(owner != null && array() == ListHelper.empty()){%n      array = (%s)%s.createArray();%n      ListHelper.setProperty(owner, property, array);%n    }%n"
+            + "    return array;%n  }%n%n", array, array, array);
+        ps.printf("  public String _getJsonString(){%n    return JsonHelper.stringify(array());%n  }%n%n");
+        ps.printf("  public String _getJsonString(JsArrayString keys, boolean datesAsMillis){%n    return JsonHelper.stringify(array(), keys, datesAsMillis);%n  }%n");
+        ps.printf("}%n");
+        ps.close();
+        getSourceWriter().write(new File(packageInfo.getOutputDirectory(), helper + ".java"), bos.toByteArray());
+    }
+
+    /**
+     * Write the EnumHelper class, which keeps converted enum arrays and lists in a
+     * hidden property of the overlay, and EnumListHelper, a ListHelper view of a
+     * javascript array of enum names that converts each element once.
+     *
+     * @param packageInfo
+     * @throws IOException
+     */
+    private void writeEnumHelpers(ClassInfo packageInfo) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
+        ps.printf("package %s;%n", packageInfo.getNewPackageName());
+        ps.printf("import com.google.gwt.core.client.JavaScriptObject;%n");
+        ps.printf("import com.google.gwt.core.client.JsArrayString;%n%n");
+        ps.printf("public class EnumHelper{%n");
+        ps.printf("  private EnumHelper(){}%n%n");
+        ps.printf("  /**%n   * @return the view stored for the property if it was made from the same source array, otherwise null%n   */%n");
+        ps.printf("  public static native Object getView(JavaScriptObject owner, String property, Object source)/*-{%n");
+        ps.printf("    var view = owner[\"$view_\" + property];%n");
+        ps.printf("    return view && view.source === source ? view.value : null;%n  }-*/;%n%n");
+        ps.printf("  /**%n   * Stores the view in a property that JSON.stringify and for-in loops do not see%n   */%n");
+        ps.printf("  public static native void setView(JavaScriptObject owner, String property, Object source, Object value)/*-{%n");
+        ps.printf("    Object.defineProperty(owner, \"$view_\" + property, {value: {source: source, value: value}, writable: true, configurable: true, enumerable: false});%n  }-*/;%n%n");
+        ps.printf("  /**%n   * @return the names of the values in a javascript array, null for a null value%n   */%n");
+        ps.printf("  public static JsArrayString names(Enum<?>[] values, int from, int to){%n"
+            + "    ListHelper.checkRange(from, to, values.length);%n"
+            + "    JsArrayString names = JavaScriptObject.createArray().cast();%n"
+            + "    for(int i = from; i < to; i++){%n"
+            + "      names.push(values[i] == null ? null : values[i].name());%n    }%n"
+            + "    return names;%n  }%n%n");
+        ps.printf("  /**%n   * @return a new javascript array of the names in an enum list, the array of an EnumListHelper%n"
+            + "   * is copied without converting, null if it has not been created yet%n   */%n");
+        ps.printf("  public static JsArrayString names(ListHelper<? extends Enum<?>> values){%n"
+            + "    if(values instanceof EnumListHelper){%n"
+            + "      JsArrayString names = ((EnumListHelper<?>) values).getArray();%n"
+            + "      return names == null ? null : copy(names);%n    }%n"
+            + "    JsArrayString names = JavaScriptObject.createArray().cast();%n"
+            + "    for(int i = 0; i < values.length(); i++){%n"
+            + "      Enum<?> value = values.get(i);%n"
+            + "      names.push(value == null ? null : value.name());%n    }%n"
+            + "    return names;%n  }%n%n");
+        ps.printf("  private static native JsArrayString copy(JsArrayString names)/*-{%n    return names.concat();%n  }-*/;%n");
+        ps.printf("}%n");
+        ps.close();
+        getSourceWriter().write(new File(packageInfo.getOutputDirectory(), "EnumHelper.java"), bos.toByteArray());
+
+        bos = new ByteArrayOutputStream();
+        ps = new PrintStream(bos);
+        ps.printf("package %s;%n", packageInfo.getNewPackageName());
+        ps.printf("import com.google.gwt.core.client.JavaScriptObject;%n");
+        ps.printf("import com.google.gwt.core.client.JsArray;%n");
+        ps.printf("import com.google.gwt.core.client.JsArrayString;%n");
+        ps.printf("import java.util.ArrayList;%n");
+        ps.printf("import java.util.List;%n");
+        ps.printf("import java.util.Map;%n%n");
+        ps.printf("public class EnumListHelper<E extends Enum<E>> extends ListHelper<E>{%n");
+        ps.printf("  private final Map<String, E> lookup;%n");
+        ps.printf("  private final List<E> values = new ArrayList<E>();%n%n");
+        ps.printf("  public EnumListHelper(JsArrayString names, Map<String, E> lookup){%n"
+            + "    super(names.<JsArray<JavaScriptObject>>cast());%n"
+            + "    this.lookup = lookup;%n  }%n%n");
+        ps.printf("  public EnumListHelper(JavaScriptObject owner, String property, Map<String, E> lookup){%n"
+            + "    super(owner, property);%n"
+            + "    this.lookup = lookup;%n  }%n%n");
+        ps.printf("  @Override%n  public E get(int index){%n"
+            + "    while(values.size() <= index){%n      values.add(null);%n    }%n"
+            + "    String name = array().<JsArrayString>cast().get(index);%n"
+            + "    E value = values.get(index);%n"
+            + "    if(value == null || !value.name().equals(name)){%n"
+            + "      value = name == null ? null : lookup.get(name);%n"
+            + "      if(name != null && value == null){%n"
+            + "        throw new IllegalArgumentException(\"No enum constant \" + name);%n      }%n"
+            + "      values.set(index, value);%n    }%n"
+            + "    return value;%n  }%n%n");
+        ps.printf("  @Override%n  public void add(E value){%n    writable().<JsArrayString>cast().push(value == null ? null : value.name());%n  }%n%n");
+        ps.printf("  @Override%n  public void set(int index, E value){%n    writable().<JsArrayString>cast().set(index, value == null ? null : value.name());%n  }%n%n");
+        ps.printf("  @Override%n  public void copyInto(E[] target, int offset){%n"
+            + "    checkRange(offset, offset + length(), target.length);%n"
+            + "    for(int i = 0; i < length(); i++){%n      target[offset + i] = get(i);%n    }%n  }%n%n");
+        ps.printf("  @Override%n  public void setFrom(E[] source, int from, int to){%n"
+            + "    checkRange(from, to, source.length);%n"
+            + "    JsArrayString target = writable().cast();%n"
+            + "    target.setLength(0);%n"
+            + "    for(int i = from; i < to; i++){%n"
+            + "      target.push(source[i] == null ? null : source[i].name());%n    }%n"
+            + "    values.clear();%n  }%n%n");
+        ps.printf("  @Override%n  public JsArrayString getArray(){%n"
+            + "    JavaScriptObject array = super.getArray();%n"
+            + "    return array == null ? null : array.<JsArrayString>cast();%n  }%n");
+        ps.printf("}%n");
+        ps.close();
+        getSourceWriter().write(new File(packageInfo.getOutputDirectory(), "EnumListHelper.java"), bos.toByteArray());
+    }
+
+    /**
+     * Write the JsonHelper class used by the generated classes and ListHelper to serialize
+     * with the browser's JSON.stringify. An object or a whole array is serialized in one call,
+     * optionally keeping only some keys and writing dates as epoch millis.
+     *
+     * @param packageInfo
+     * @throws IOException
+     */
+    private void writeJsonHelper(ClassInfo packageInfo) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
+        ps.printf("package %s;%n", packageInfo.getNewPackageName());
+        ps.printf("import com.google.gwt.core.client.JavaScriptObject;%n");
+        ps.printf("import com.google.gwt.core.client.JsArrayString;%n%n");
+        ps.printf("public class JsonHelper{%n");
+        ps.printf("  private JsonHelper(){}%n%n");
+        ps.printf("  public static native String stringify(JavaScriptObject value)/*-{return JSON.stringify(value);}-*/;%n%n");
+        ps.printf("  /**%n   * @param keys only these keys are written, all keys if null%n"
+            + "   * @param datesAsMillis write Date values as epoch millis instead of ISO strings%n   */%n");
+        ps.printf("  public static String stringify(JavaScriptObject value, JsArrayString keys, boolean datesAsMillis){%n"
+            + "    return stringify(value, keys, datesAsMillis, null);%n  }%n%n");
+        ps.printf("  /**%n   * @param keys only these keys are written, all keys if null%n"
+            + "   * @param datesAsMillis write Date values and the date properties of the schema as epoch millis%n"
+            + "   * instead of ISO strings, their millis are taken from the DateHelper cache or parsed from the wire value%n"
+            + "   * @param dateSchema the _dateSchema() of the overlay, or of the elements if the value is an array%n   */%n");
+        ps.printf("  public static native String stringify(JavaScriptObject value, JsArrayString keys, boolean datesAsMillis, JavaScriptObject dateSchema)/*-{%n");
+        ps.printf("    if(!datesAsMillis){%n      return JSON.stringify(value, keys);%n    }%n");
+        ps.printf("    var include = null;%n");
+        ps.printf("    if(keys){%n      include = {};%n      for(var i = 0; i < keys.length; i++){%n        include[keys[i]] = true;%n      }%n    }%n");
+        ps.printf("    var toString = Object.prototype.toString;%n");
+        ps.printf("    var hasOwn = Object.prototype.hasOwnProperty;%n");
+        ps.printf("    // the objects being written with their schema, innermost last. JSON.stringify%n"
+            + "    // is depth first, so the holder of a key is the last one not yet finished%n");
+        ps.printf("    var stack = [];%n");
+        ps.printf("    var root = {'': function(){%n      return dateSchema;%n    }};%n");
+        ps.printf("    return JSON.stringify(value, function(key, v){%n");
+        ps.printf("      // some engines pass array indexes as numbers%n      key = '' + key;%n");
+        ps.printf("      if(key.indexOf('$date_') === 0 || key.indexOf('$view_') === 0){%n        return undefined;%n      }%n");
+        ps.printf("      var isArray = toString.call(this) === '[object Array]';%n");
+        ps.printf("      if(include && key !== '' && !isArray && !include[key]){%n        return undefined;%n      }%n");
+        ps.printf("      while(stack.length > 0 && stack[stack.length - 1].holder !== this){%n        stack.pop();%n      }%n");
+        ps.printf("      var schema = stack.length > 0 ? stack[stack.length - 1].schema : root;%n");
+        ps.printf("      var entry = !schema ? null : isArray ? schema : hasOwn.call(schema, key) ? schema[key] : null;%n");
+        ps.printf("      var raw = this[key];%n");
+        ps.printf("      if(toString.call(raw) === '[object Date]'){%n        return raw.getTime();%n      }%n");
+        ps.printf("      if(entry === true && typeof raw === 'string'){%n");
+        ps.printf("        var cached = this['$date_' + key];%n");
+        ps.printf("        var millis = cached && cached.raw === raw ? cached.millis : Date.parse(raw);%n");
+        ps.printf("        return millis === millis ? millis : v;%n      }%n");
+        ps.printf("      if(v !== null && typeof v === 'object'){%n");
+        ps.printf("        // an array keeps the schema function of its elements%n");
+        ps.printf("        var nested = typeof entry !== 'function' ? null : toString.call(v) === '[object Array]' ? entry : entry();%n");
+        ps.printf("        stack.push({holder: v, schema: nested});%n      }%n");
+        ps.printf("      return v;%n");
+        ps.printf("    });%n  }-*/;%n");
+        ps.printf("}%n");
+        ps.close();
+        getSourceWriter().write(new File(packageInfo.getOutputDirectory(), "JsonHelper.java"), bos.toByteArray());
     }
     
+    /**
+     * Write the helper that exposes date properties as epoch millis. The wire
+     * value is kept as it came from the server, the parsed millis are cached
+     * in a non-enumerable property so JSON.stringify does not see them.
+     *
+     * @param packageInfo
+     * @throws IOException
+     */
+    private void writeDateHelper(ClassInfo packageInfo) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
+        ps.printf("package %s;%n", packageInfo.getNewPackageName());
+        ps.printf("import com.google.gwt.core.client.JavaScriptObject;%n%n");
+        ps.printf("public class DateHelper{%n");
+        ps.printf("  private DateHelper(){}%n%n");
+        ps.printf("  /**%n   * @return the epoch millis of the property, NaN if it is not set%n   */%n");
+        ps.printf("  public static native double getMillis(JavaScriptObject owner, String name)/*-{%n");
+        ps.printf("    var raw = owner[name];%n");
+        ps.printf("    if(raw === undefined || raw === null){%n      return NaN;%n    }%n");
+        ps.printf("    if(typeof raw === 'number'){%n      return raw;%n    }%n");
+        ps.printf("    var cached = owner['$date_' + name];%n");
+        ps.printf("    if(cached && cached.raw === raw){%n      return cached.millis;%n    }%n");
+        ps.printf("    var millis = Date.parse(raw);%n");
+        ps.printf("    @%s.DateHelper::cache(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;Ljava/lang/String;D)(owner, name, raw, millis);%n", packageInfo.getNewPackageName());
+        ps.printf("    return millis;%n  }-*/;%n%n");
+        ps.printf("  /**%n   * Set the property from epoch millis, NaN clears it. A property that was sent%n"
+            + "   * as a number stays a number, otherwise it is written as an ISO 8601 string.%n   */%n");
+        ps.printf("  public static native void setMillis(JavaScriptObject owner, String name, double millis)/*-{%n");
+        ps.printf("    if(millis !== millis){%n      owner[name] = null;%n      return;%n    }%n");
+        ps.printf("    if(typeof owner[name] === 'number'){%n      owner[name] = millis;%n      return;%n    }%n");
+        ps.printf("    var iso = new Date(millis).toISOString();%n");
+        ps.printf("    owner[name] = iso;%n");
+        ps.printf("    @%s.DateHelper::cache(Lcom/google/gwt/core/client/JavaScriptObject;Ljava/lang/String;Ljava/lang/String;D)(owner, name, iso, millis);%n", packageInfo.getNewPackageName());
+        ps.printf("  }-*/;%n%n");
+        ps.printf("  private static native void cache(JavaScriptObject owner, String name, String raw, double millis)/*-{%n");
+        ps.printf("    Object.defineProperty(owner, '$date_' + name, {value: {raw: raw, millis: millis}, writable: true, configurable: true});%n");
+        ps.printf("  }-*/;%n");
+        ps.printf("}%n");
+        ps.close();
+        getSourceWriter().write(new File(packageInfo.getOutputDirectory(), "DateHelper.java"), bos.toByteArray());
+    }
+
+    /**
+     * Write the helper that parses a large JSON array in slices. Each step of an
+     * incremental scheduler command finds the end of the next batch of top level
+     * elements and parses only that text, with the same code as the eval methods.
+     *
+     * @param packageInfo
+     * @throws IOException
+     */
+    private void writeIncrementalParser(ClassInfo packageInfo) throws IOException {
+        String body = config.isLegacyEval() ? LEGACY_EVAL : NATIVE_PARSE;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
+        ps.printf("package %s;%n", packageInfo.getNewPackageName());
+        ps.printf("import com.google.gwt.core.client.JavaScriptObject;%n");
+        ps.printf("import com.google.gwt.core.client.JsArray;%n");
+        ps.printf("import com.google.gwt.core.client.Scheduler;%n%n");
+        ps.printf("public class IncrementalParser<T extends JavaScriptObject> implements Scheduler.RepeatingCommand{%n");
+        ps.printf("  /**%n   * Characters of JSON parsed in each step%n   */%n");
+        ps.printf("  public static final int BATCH_SIZE = 64 * 1024;%n%n");
+        ps.printf("  public interface Callback<T extends JavaScriptObject>{%n"
+            + "    /**%n     * Called with the elements of the array in order, one batch per step%n     */%n"
+            + "    void onBatch(JsArray<T> batch);%n%n"
+            + "    void onComplete();%n%n"
+            + "    void onFailure(Throwable caught);%n  }%n%n");
+        ps.printf("  private final String text;%n");
+        ps.printf("  private final int batchSize;%n");
+        ps.printf("  private final Callback<T> callback;%n");
+        ps.printf("  private int position = -1;%n%n");
+        ps.printf("  private IncrementalParser(String text, int batchSize, Callback<T> callback){%n"
+            + "    this.text = text;%n    this.batchSize = batchSize;%n    this.callback = callback;%n  }%n%n");
+        ps.printf("  public static <T extends JavaScriptObject> void parse(String jsonText, Callback<T> callback){%n"
+            + "    parse(jsonText, BATCH_SIZE, callback);%n  }%n%n");
+        ps.printf("  /**%n   * Parse a JSON array from the scheduler, batchSize characters at a time%n   */%n");
+        ps.printf("  public static <T extends JavaScriptObject> void parse(String jsonText, int batchSize, Callback<T> callback){%n"
+            + "    Scheduler.get().scheduleIncremental(new IncrementalParser<T>(jsonText, batchSize, callback));%n  }%n%n");
+        ps.printf("  @Override%n  public boolean execute(){%n"
+            + "    JsArray<T> batch;%n"
+            + "    boolean last;%n"
+            + "    try{%n"
+            + "      if(position < 0){%n        position = start(text) + 1;%n      }%n"
+            + "      int end = scan(text, position, batchSize);%n"
+            + "      if(end < 0){%n        throw new IllegalArgumentException(\"Unterminated JSON array\");%n      }%n"
+            + "      batch = parseSlice(\"[\" + text.substring(position, end) + \"]\");%n"
+            + "      if(batch == null){%n        throw new IllegalArgumentException(\"Invalid JSON at \" + position);%n      }%n"
+            + "      last = text.charAt(end) == ']';%n"
+            + "      position = end + 1;%n"
+            + "    }catch(RuntimeException ex){%n      callback.onFailure(ex);%n      return false;%n    }%n"
+            + "    if(batch.length() > 0){%n      callback.onBatch(batch);%n    }%n"
+            + "    if(last){%n      callback.onComplete();%n    }%n"
+            + "    return !last;%n  }%n%n");
+        ps.printf("  /**%n   * @return the index of the opening bracket of the array%n   */%n");
+        ps.printf("  private static int start(String text){%n"
+            + "    for(int i = 0; i < text.length(); i++){%n"
+            + "      char c = text.charAt(i);%n"
+            + "      if(c == '['){%n        return i;%n      }%n"
+            + "      if(c != ' ' && c != '\\t' && c != '\\n' && c != '\\r'){%n        break;%n      }%n"
+            + "    }%n"
+            + "    throw new IllegalArgumentException(\"Not a JSON array\");%n  }%n%n");
+        ps.printf("  /**%n   * Find the comma after the first top level element that ends at least budget characters%n"
+            + "   * after start, or the closing bracket of the array. Brackets in strings are skipped.%n"
+            + "   * @return the index of the comma or bracket, -1 if the array is not closed%n   */%n");
+        ps.printf("  private static native int scan(String text, int start, int budget)/*-{%n"
+            + "    var depth = 0, inString = false;%n"
+            + "    for(var i = start, n = text.length; i < n; i++){%n"
+            + "      var c = text.charCodeAt(i);%n"
+            + "      if(inString){%n"
+            + "        if(c === 92){%n          i++;%n        }else if(c === 34){%n          inString = false;%n        }%n"
+            + "      }else if(c === 34){%n        inString = true;%n"
+            + "      }else if(c === 123 || c === 91){%n        depth++;%n"
+            + "      }else if(c === 125 || c === 93){%n"
+            + "        if(depth === 0){%n          return i;%n        }%n"
+            + "        depth--;%n"
+            + "      }else if(c === 44 && depth === 0 && i - start >= budget){%n        return i;%n      }%n"
+            + "    }%n"
+            + "    return -1;%n  }-*/;%n%n");
+        ps.printf("  private static native <T extends JavaScriptObject> JsArray<T> parseSlice(String jsonText)/*-{%n"
+            + "    var parse = function(jsonText){%s};%n"
+            + "    return parse(jsonText) || null;%n  }-*/;%n", body);
+        ps.printf("}%n");
+        ps.close();
+        getSourceWriter().write(new File(packageInfo.getOutputDirectory(), "IncrementalParser.java"), bos.toByteArray());
+    }
+
     /**
      * Gets the top level class that is being generated.
      *
@@ -479,6 +1582,16 @@ public class JavaScriptOverlayGenerator {
         return classInfo;
     }
 
+    /**
+     * The file the interface for a class is written to
+     *
+     * @param classInfo
+     * @return
+     */
+    private File getInterfaceFile(ClassInfo classInfo) {
+        return new File(classInfo.getOutputDirectory(), "I" + classInfo.getClassName() + ".java");
+    }
+
     /**
      * Generates the interface classes if generate interfaces is true
      *
@@ -486,40 +1599,75 @@ public class JavaScriptOverlayGenerator {
      * @param methods
      * @throws IOException
      */
-    private void generateInferfaces(ClassInfo classInfo, PropertyDescriptor[] methods) throws IOException {
+    private void generateInferfaces(ClassInfo classInfo, PropertyTable methods) throws IOException {
         if (config.isGenerateInterface()) {
-            BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(new File(classInfo.getOutputDirectory(), "I" + classInfo.getClassName() + ".java")));
-            PrintStream ps = new PrintStream(fos);
-            ps.printf("package %s;%n", classInfo.getNewPackageName());
-            ps.printf("public interface I%s{%n", classInfo.getClassName());
-            generateInterface(methods, ps);
-            ps.printf("}%n");
-            ps.close();
-            fos.close();
+            CodeWriter out = CodeWriter.forThread();
+            out.printf("package %s;%n", classInfo.getNewPackageName());
+            out.printf("public interface I%s{%n", classInfo.getClassName());
+            generateInterface(methods, out);
+            out.printf("}%n");
+            getSourceWriter().write(getInterfaceFile(classInfo), out.toBytes());
+        }
+    }
+
+    /**
+     * Generates a static create() that returns an object literal with every property
+     * set, always in the same order, so every object of the class has the same shape
+     *
+     * @param classInfo
+     * @param methods
+     * @param ps
+     */
+    private void generateFactory(ClassInfo classInfo, PropertyTable methods, CodeWriter out) throws IOException {
+        out.printf("  public static native %sJso create()/*-{%n    return {", classInfo.getClassName());
+        String separator = "";
+        for (PropertyModel property : methods) {
+            MethodModel method = property.getReadMethod() != null ? property.getReadMethod() : property.getWriteMethod();
+            out.printf("%s%n      \"%s\": %s", separator, ReturnType.getPropertyName(method.getName()), getInitialValue(property));
+            separator = ",";
         }
+        out.printf(separator.length() == 0 ? "};%n  }-*/;%n" : "%n    };%n  }-*/;%n");
+    }
+
+    /**
+     * The javascript value a property starts with in a created object
+     *
+     * @param property
+     * @return
+     * @throws IOException
+     */
+    private String getInitialValue(PropertyModel property) throws IOException {
+        JavaType type = property.getReadMethod() != null
+            ? property.getReadMethod().getReturnType() : property.getWriteMethod().getParameterTypes()[0];
+        if (type.isPrimitive()) {
+            return "boolean".equals(type.getName()) ? "false" : "0";
+        }
+        ReturnType returnType = getResolver().getType(type);
+        if (returnType.isList() && !config.isLazyLists()) {
+            // the getters would create it anyway
+            return "[]";
+        }
+        return "null";
     }
 
     /**
      * Generates the safe javascript eval static functions
      *
      * @param classInfo
-     * @param cls
+     * @param model
      * @param ps
      */
-    private void generateEvalMethods(ClassInfo classInfo, Class<?> cls, PrintStream ps) {
-        XmlRootElement rootAnn = cls.getAnnotation(XmlRootElement.class);
-        if (rootAnn != null) {
-            // as per http://tools.ietf.org/html/rfc4627
-            ps.printf("  public static native %sJso eval%s(String jsonText) /*-{"
-                + "return !(/[^,:{}\\[\\]0-9.\\-+Eaeflnr-u \\n\\r\\t]/.test( "
-                + "jsonText.replace(/\"(\\\\.|[^\"\\\\])*\"/g, ''))) "
-                + " && "
-                + "eval('(' + jsonText + ')');}-*/;%n", classInfo.getClassName(), classInfo.getClassName());
-            ps.printf("  public static native com.google.gwt.core.client.JsArray<%sJso> eval%sArray(String jsonText) /*-{"
-                + "return !(/[^,:{}\\[\\]0-9.\\-+Eaeflnr-u \\n\\r\\t]/.test( "
-                + "jsonText.replace(/\"(\\\\.|[^\"\\\\])*\"/g, ''))) "
-                + " && "
-                + "eval('(' + jsonText + ')');}-*/;%n", classInfo.getClassName(), classInfo.getClassName());
+    private void generateEvalMethods(ClassInfo classInfo, ClassModel model, CodeWriter out) {
+        if (model.isRootElement()) {
+            String body = config.isLegacyEval() ? LEGACY_EVAL : NATIVE_PARSE;
+            out.printf("  public static native %sJso eval%s(String jsonText) /*-{%s}-*/;%n",
+                classInfo.getClassName(), classInfo.getClassName(), body);
+            out.printf("  public static native com.google.gwt.core.client.JsArray<%sJso> eval%sArray(String jsonText) /*-{%s}-*/;%n",
+                classInfo.getClassName(), classInfo.getClassName(), body);
+            // parsed in slices from the scheduler so a large array does not block the UI
+            out.printf("  public static void parse%sArrayIncremental(String jsonText, %s.IncrementalParser.Callback<%sJso> callback){%n"
+                + "    %s.IncrementalParser.parse(jsonText, callback);%n  }%n",
+                classInfo.getClassName(), topPackage.getNewPackageName(), classInfo.getClassName(), topPackage.getNewPackageName());
         }
 
     }
@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable description of a declared java type, including the generic
+ * type arguments. Built from class file descriptors and signatures, or from
+ * reflection, so type resolution does not depend on a loaded {@link Class}.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public final class JavaType {
+
+    /**
+     * java.lang.Object, used for type variables and unbounded wildcards
+     */
+    public static final JavaType OBJECT = new JavaType("java.lang.Object", null, null);
+
+    private static final String PRIMITIVES = "ZBCSIJFDV";
+    private static final String[] PRIMITIVE_NAMES = {
+        "boolean", "byte", "char", "short", "int", "long", "float", "double", "void"
+    };
+
+    /**
+     * Same format as {@link Class#getName()}
+     */
+    private final String name;
+    private final JavaType componentType;
+    private final List<JavaType> typeArguments;
+
+    private JavaType(String name, JavaType componentType, List<JavaType> typeArguments) {
+        this.name = name;
+        this.componentType = componentType;
+        if (typeArguments == null || typeArguments.isEmpty()) {
+            this.typeArguments = Collections.emptyList();
+        } else {
+            this.typeArguments = Collections.unmodifiableList(new ArrayList<JavaType>(typeArguments));
+        }
+    }
+
+    /**
+     * Create a primitive type from its descriptor character
+     * @param descriptor one of ZBCSIJFDV
+     * @return 
+     */
+    static JavaType primitive(char descriptor) {
+        int index = PRIMITIVES.indexOf(descriptor);
+        if (index == -1) {
+            throw new IllegalArgumentException("Not a primitive descriptor " + descriptor);
+        }
+        return new JavaType(PRIMITIVE_NAMES[index], null, null);
+    }
+
+    /**
+     * Create a class or interface type
+     * @param name binary name such as java.util.Map$Entry
+     * @param typeArguments generic arguments, may be null
+     * @return 
+     */
+    static JavaType classType(String name, List<JavaType> typeArguments) {
+        return new JavaType(name, null, typeArguments);
+    }
+
+    /**
+     * Create an array type
+     * @param componentType
+     * @return 
+     */
+    static JavaType arrayOf(JavaType componentType) {
+        String componentName = componentType.getName();
+        String name;
+        if (componentType.isArray()) {
+            name = "[" + componentName;
+        } else if (componentType.isPrimitive()) {
+            name = "[" + PRIMITIVES.charAt(indexOfPrimitive(componentName));
+        } else {
+            name = "[L" + componentName + ";";
+        }
+        return new JavaType(name, componentType, null);
+    }
+
+    /**
+     * Create a type from reflection
+     * @param type
+     * @return 
+     */
+    static JavaType forType(Type type) {
+        if (type instanceof Class) {
+            Class<?> cls = (Class<?>) type;
+            if (cls.isArray()) {
+                return arrayOf(forType(cls.getComponentType()));
+            }
+            return new JavaType(cls.getName(), null, null);
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) type;
+            List<JavaType> args = new ArrayList<JavaType>();
+            for (Type arg : pt.getActualTypeArguments()) {
+                args.add(forType(arg));
+            }
+            return classType(((Class<?>) pt.getRawType()).getName(), args);
+        }
+        if (type instanceof GenericArrayType) {
+            return arrayOf(forType(((GenericArrayType) type).getGenericComponentType()));
+        }
+        if (type instanceof WildcardType) {
+            Type[] upper = ((WildcardType) type).getUpperBounds();
+            return upper.length == 0 ? OBJECT : forType(upper[0]);
+        }
+        if (type instanceof TypeVariable) {
+            Type[] bounds = ((TypeVariable<?>) type).getBounds();
+            return bounds.length == 0 ? OBJECT : forType(bounds[0]);
+        }
+        return OBJECT;
+    }
+
+    private static int indexOfPrimitive(String name) {
+        for (int i = 0; i < PRIMITIVE_NAMES.length; i++) {
+            if (PRIMITIVE_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the name in the same format as {@link Class#getName()}
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if this is an array type
+     */
+    public boolean isArray() {
+        return componentType != null;
+    }
+
+    /**
+     * @return true if this is a primitive type or void
+     */
+    public boolean isPrimitive() {
+        return componentType == null && indexOfPrimitive(name) != -1;
+    }
+
+    /**
+     * @return the component type of an array, or null
+     */
+    public JavaType getComponentType() {
+        return componentType;
+    }
+
+    /**
+     * @return the generic type arguments, empty if the type is raw
+     */
+    public List<JavaType> getTypeArguments() {
+        return typeArguments;
+    }
+
+    /**
+     * @return the erased descriptor of the type, e.g. Ljava/util/List;
+     */
+    public String getDescriptor() {
+        if (isArray()) {
+            return name.replace('.', '/');
+        }
+        int index = indexOfPrimitive(name);
+        if (index != -1) {
+            return String.valueOf(PRIMITIVES.charAt(index));
+        }
+        return "L" + name.replace('.', '/') + ";";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof JavaType)) {
+            return false;
+        }
+        JavaType other = (JavaType) obj;
+        return name.equals(other.name) && typeArguments.equals(other.typeArguments)
+            && (componentType == null ? other.componentType == null : componentType.equals(other.componentType));
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode() * 31 + typeArguments.hashCode();
+    }
+
+    /**
+     * @return the type in source form, e.g. java.util.List&lt;java.lang.String&gt;
+     */
+    @Override
+    public String toString() {
+        if (isArray()) {
+            return componentType + "[]";
+        }
+        if (typeArguments.isEmpty()) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(name).append('<');
+        for (int i = 0; i < typeArguments.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(typeArguments.get(i));
+        }
+        return sb.append('>').toString();
+    }
+}
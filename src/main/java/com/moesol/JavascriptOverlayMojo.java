@@ -15,6 +15,15 @@
  */
 package com.moesol;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
@@ -26,6 +35,7 @@ import org.apache.maven.project.MavenProject;
  * @phase generate-sources
  * @goal overlay
  * @requiresDependencyResolution compile
+ * @threadSafe
  */
 public class JavascriptOverlayMojo extends AbstractMojo {
 
@@ -34,10 +44,36 @@ public class JavascriptOverlayMojo extends AbstractMojo {
         Config config = new Config();
         config.setNewPackage(toPackage);
         config.setOldPackage(fromPackage);
+        if (packageMappings != null) {
+            config.setPackageMappings(Arrays.asList(packageMappings));
+        }
         config.setSourcePackage(sourcePackage);
         config.setOutputDirectory(outputDirectory);
         config.setLog(getLog());
         config.setGenerateInterface(generateInterface);
+        config.setThreads(threads);
+        config.setLegacyEval(legacyEval);
+        config.setLazyLists(lazyLists);
+        config.setTypedLists(typedLists);
+        config.setPruneUnreachable(pruneUnreachable);
+        if (rootClasses != null) {
+            config.setRootClasses(Arrays.asList(rootClasses));
+        }
+        if (modelCache) {
+            config.setModelCacheDirectory(modelCacheDirectory);
+        }
+        if (metricsReport) {
+            config.setMetricsReport(metricsReportFile);
+        }
+        try {
+            config.setDateStrategy(dateStrategy);
+            config.setOutputMode(outputMode);
+            config.validate();
+        } catch (IllegalArgumentException ex) {
+            throw new MojoExecutionException(ex.getMessage());
+        }
+        URLClassLoader loader = createProjectClassLoader();
+        config.setClassLoader(loader);
         JavaScriptOverlayGenerator gen = new JavaScriptOverlayGenerator(config);
         try {
             gen.generate();
@@ -46,6 +82,47 @@ public class JavascriptOverlayMojo extends AbstractMojo {
         } catch (Exception ex) {
             getLog().error(ex);
             throw new MojoExecutionException("Error", ex);
+        } finally {
+            close(loader);
+        }
+    }
+
+    /**
+     * A loader of the project's compile classpath only. The parent is the bootstrap
+     * loader, so nothing is found through the plugin's realm, and the loader can be
+     * closed when the execution ends.
+     *
+     * @return
+     * @throws MojoExecutionException
+     */
+    private URLClassLoader createProjectClassLoader() throws MojoExecutionException {
+        try {
+            List<?> elements = project.getCompileClasspathElements();
+            URL[] urls = new URL[elements.size()];
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = new File((String) elements.get(i)).toURI().toURL();
+            }
+            getLog().debug("Reading classes from " + Arrays.asList(urls));
+            return new URLClassLoader(urls, null);
+        } catch (DependencyResolutionRequiredException ex) {
+            throw new MojoExecutionException("The compile classpath is not resolved", ex);
+        } catch (MalformedURLException ex) {
+            throw new MojoExecutionException("Bad classpath element", ex);
+        }
+    }
+
+    /**
+     * Release the open jars of the loader, a no-op before java 7
+     *
+     * @param loader
+     */
+    private void close(URLClassLoader loader) {
+        if (loader instanceof Closeable) {
+            try {
+                ((Closeable) loader).close();
+            } catch (IOException ex) {
+                getLog().warn("Unable to close the class loader", ex);
+            }
         }
     }
     /**
@@ -62,6 +139,14 @@ public class JavascriptOverlayMojo extends AbstractMojo {
      * @parameter expression="${overlay.toPackage}"
      */
     private String toPackage;
+    /**
+     * More package renames, each with a from and to package.
+     * Tried in order after fromPackage, the first rule whose from package
+     * is the package or a parent of it is used.
+     *
+     * @parameter
+     */
+    private PackageMapping[] packageMappings;
     /**
      * The source package to search for POJOs.
      *
@@ -89,5 +174,94 @@ public class JavascriptOverlayMojo extends AbstractMojo {
      * @parameter expression="${overlay.generateInterface}" default-value="true"
      */
     private boolean generateInterface;
+    /**
+     * Number of threads used to generate the overlay classes.
+     * Defaults to one thread per available processor.
+     *
+     * @parameter expression="${overlay.threads}" default-value="0"
+     */
+    private int threads;
+    /**
+     * Generate eval methods that check the JSON text with the RFC 4627 regex
+     * and call eval, for browsers without a native JSON.parse.
+     *
+     * @parameter expression="${overlay.legacyEval}" default-value="false"
+     */
+    private boolean legacyEval;
+    /**
+     * Generate list getters that do not change the object. A missing list is read
+     * as a shared empty list and the array is created on the first add or set,
+     * so unused lists are not sent back to the server.
+     *
+     * @parameter expression="${overlay.lazyLists}" default-value="false"
+     */
+    private boolean lazyLists;
+    /**
+     * Generate lists of strings, boxed numbers and booleans as StringListHelper,
+     * IntegerListHelper, NumberListHelper and BooleanListHelper, backed by typed
+     * javascript arrays. Off by default, these lists are then java arrays.
+     *
+     * @parameter expression="${overlay.typedLists}" default-value="false"
+     */
+    private boolean typedLists;
+    /**
+     * How XMLGregorianCalendar properties are exposed. "string" keeps the
+     * ISO 8601 String of the wire format, "epochMillis" exposes a double of
+     * milliseconds since the epoch that is parsed once and cached on the object.
+     *
+     * @parameter expression="${overlay.dateStrategy}" default-value="string"
+     */
+    private String dateStrategy;
+    /**
+     * The kind of overlay generated. "jsni" overlays extend JavaScriptObject.
+     * "jsinterop" overlays are @JsType(isNative = true) classes with a
+     * @JsProperty field per property, for GWT 2.8 and J2CL. Lists are java
+     * arrays and interfaces are not generated in this mode.
+     *
+     * @parameter expression="${overlay.outputMode}" default-value="jsni"
+     */
+    private String outputMode;
+    /**
+     * Only generate the classes that can be reached from the root classes through
+     * their properties, super classes and sub classes. The classes that are left
+     * out are listed in js-overlay-unreachable.txt in the output directory.
+     *
+     * @parameter expression="${overlay.pruneUnreachable}" default-value="false"
+     */
+    private boolean pruneUnreachable;
+    /**
+     * Binary names of the classes pruning starts from, such as com.foo.Order.
+     * Defaults to the classes annotated with @XmlRootElement.
+     *
+     * @parameter
+     */
+    private String[] rootClasses;
+    /**
+     * Keep the resolved property tables and types of every class between builds,
+     * so classes whose class files did not change are not introspected again.
+     *
+     * @parameter expression="${overlay.modelCache}" default-value="true"
+     */
+    private boolean modelCache;
+    /**
+     * The directory of the model cache. The file in it is named after the config,
+     * so a directory outside target can be shared by builds and CI agents.
+     *
+     * @parameter expression="${overlay.modelCacheDirectory}" default-value="${project.build.directory}/js-overlay-cache"
+     */
+    private String modelCacheDirectory;
+    /**
+     * Write the phase times, counters and per class times of the run as JSON,
+     * in addition to the summary table that is always logged.
+     *
+     * @parameter expression="${overlay.metricsReport}" default-value="false"
+     */
+    private boolean metricsReport;
+    /**
+     * The file of the JSON metrics report.
+     *
+     * @parameter expression="${overlay.metricsReportFile}" default-value="${project.build.directory}/js-overlay-metrics.json"
+     */
+    private String metricsReportFile;
 
 }
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Renders overlays as JsInterop native types instead of JSNI.
+ * Every property is a {@code @JsProperty} field of a {@code @JsType(isNative = true)}
+ * class named Object, so the compiler turns property access into a plain
+ * javascript property read or write. The bean getters and setters are
+ * {@code @JsOverlay} methods that are inlined. Lists are java arrays, which
+ * are javascript arrays in GWT 2.8 and J2CL.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+class JsInteropWriter {
+
+    private static final String JS_TYPE = "@jsinterop.annotations.JsType(isNative = true, namespace = jsinterop.annotations.JsPackage.GLOBAL, name = \"%s\")%n";
+    private static final String JS_OVERLAY = "  @jsinterop.annotations.JsOverlay%n";
+    /**
+     * Names a property can have that are not java identifiers
+     */
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+        "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+        "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+        "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp",
+        "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void",
+        "volatile", "while", "true", "false", "null"));
+
+    private final TypeResolver resolver;
+    private final ClassInfo topPackage;
+
+    /**
+     * Constructor
+     * @param resolver resolves the property types
+     * @param topPackage the package the helper is written to
+     */
+    JsInteropWriter(TypeResolver resolver, ClassInfo topPackage) {
+        this.resolver = resolver;
+        this.topPackage = topPackage;
+    }
+
+    /**
+     * Render the overlay of a class
+     *
+     * @param classInfo
+     * @param properties
+     * @param rootElement true to generate the parse methods
+     * @return the source
+     * @throws IOException
+     */
+    byte[] render(ClassInfo classInfo, PropertyTable properties, boolean rootElement) throws IOException {
+        CodeWriter out = CodeWriter.forThread();
+        String jsoName = classInfo.getClassName() + "Jso";
+        out.printf("package %s;%n", classInfo.getNewPackageName());
+        out.printf(JS_TYPE, "Object");
+        out.printf("public class %s{%n", jsoName);
+        for (PropertyModel property : properties) {
+            ReturnType type = resolver.getType(getMethod(property));
+            out.printf("  @jsinterop.annotations.JsProperty(name = \"%s\")%n  public %s %s;%n",
+                getPropertyName(property), getFieldType(type), getFieldName(property));
+        }
+        out.printf("  public %s(){}%n", jsoName);
+        for (PropertyModel property : properties) {
+            ReturnType type = resolver.getType(getMethod(property));
+            if (property.getReadMethod() != null) {
+                writeGetter(out, property.getReadMethod().getName(), getFieldName(property), type);
+            }
+            if (property.getWriteMethod() != null) {
+                writeSetter(out, property.getWriteMethod().getName(), getFieldName(property), type);
+            }
+        }
+        // assigned in the same order every time so every object of the class has the same shape
+        out.printf(JS_OVERLAY + "  public static %s create(){%n    %s value = new %s();%n", jsoName, jsoName, jsoName);
+        for (PropertyModel property : properties) {
+            out.printf("    value.%s = %s;%n", getFieldName(property), getInitialValue(property));
+        }
+        out.printf("    return value;%n  }%n");
+        if (rootElement) {
+            out.printf(JS_OVERLAY + "  public static %s eval%s(String jsonText){%n    return (%s) %s.Json.parse(jsonText);%n  }%n",
+                jsoName, classInfo.getClassName(), jsoName, topPackage.getNewPackageName());
+            out.printf(JS_OVERLAY + "  public static %s[] eval%sArray(String jsonText){%n    return (%s[]) %s.Json.parse(jsonText);%n  }%n",
+                jsoName, classInfo.getClassName(), jsoName, topPackage.getNewPackageName());
+        }
+        out.printf(JS_OVERLAY + "  public final java.lang.String _getClassName(){%n    return \"%s.%s\";%n  }%n",
+            classInfo.getNewPackageName(), jsoName);
+        out.printf(JS_OVERLAY + "  public final java.lang.String _getJsonString(){%n    return %s.Json.stringify(this);%n  }%n",
+            topPackage.getNewPackageName());
+        out.printf("}%n");
+        return out.toBytes();
+    }
+
+    /**
+     * Render the native type of the browser's JSON object
+     *
+     * @param packageInfo
+     * @return the source
+     */
+    byte[] renderJson(ClassInfo packageInfo) {
+        CodeWriter out = CodeWriter.forThread();
+        out.printf("package %s;%n", packageInfo.getNewPackageName());
+        out.printf(JS_TYPE, "JSON");
+        out.printf("public class Json{%n");
+        out.printf("  public static native Object parse(String text);%n");
+        out.printf("  public static native String stringify(Object value);%n");
+        out.printf("}%n");
+        return out.toBytes();
+    }
+
+    private void writeGetter(CodeWriter out, String methodName, String field, ReturnType type) {
+        out.printf(JS_OVERLAY + "  public final %s %s(){%n", getAccessorType(type), methodName);
+        if (isEnumArray(type)) {
+            String enm = type.getParameterType();
+            out.printf("    String[] names = this.%s;%n", field);
+            out.printf("    if(names == null){%n      return null;%n    }%n");
+            if (type.isArray()) {
+                out.printf("    %s[] values = new %s[names.length];%n", enm, enm);
+                out.printf("    for(int i = 0; i < names.length; i++){%n      values[i] = %s.fromName(names[i]);%n    }%n", enm);
+            } else {
+                out.printf("    java.util.List<%s> values = new java.util.ArrayList<%s>(names.length);%n", enm, enm);
+                out.printf("    for(String name : names){%n      values.add(%s.fromName(name));%n    }%n", enm);
+            }
+            out.printf("    return values;%n");
+        } else if (type.isEnum()) {
+            out.printf("    return %s.fromName(this.%s);%n", type.getName(), field);
+        } else {
+            out.printf("    return this.%s;%n", field);
+        }
+        out.printf("  }%n");
+    }
+
+    private void writeSetter(CodeWriter out, String methodName, String field, ReturnType type) {
+        out.printf(JS_OVERLAY + "  public final void %s(%s value){%n", methodName, getAccessorType(type));
+        if (isEnumArray(type)) {
+            out.printf("    if(value == null){%n      this.%s = null;%n      return;%n    }%n", field);
+            if (type.isArray()) {
+                out.printf("    String[] names = new String[value.length];%n");
+                out.printf("    for(int i = 0; i < value.length; i++){%n      names[i] = value[i] == null ? null : value[i].name();%n    }%n");
+            } else {
+                out.printf("    String[] names = new String[value.size()];%n    int i = 0;%n");
+                out.printf("    for(%s item : value){%n      names[i++] = item == null ? null : item.name();%n    }%n", type.getParameterType());
+            }
+            out.printf("    this.%s = names;%n", field);
+        } else if (type.isEnum()) {
+            out.printf("    this.%s = value == null ? null : value.name();%n", field);
+        } else {
+            out.printf("    this.%s = value;%n", field);
+        }
+        out.printf("  }%n");
+    }
+
+    /**
+     * True for arrays and lists of enums, stored as an array of names
+     */
+    private static boolean isEnumArray(ReturnType type) {
+        return type.isEnum() && type.isArray() || type.isList() && type.isParameterTypeEnum();
+    }
+
+    /**
+     * The java type of the javascript value of a property
+     */
+    private static String getFieldType(ReturnType type) {
+        if (isEnumArray(type)) {
+            return "java.lang.String[]";
+        }
+        if (type.isEnum() || type.isDate()) {
+            return "java.lang.String";
+        }
+        if (type.isPrimitiveList()) {
+            String valueType = type.getPrimitiveList().getValueType();
+            return ("String".equals(valueType) ? "java.lang.String" : valueType) + "[]";
+        }
+        if (type.isList() || type.isArray()) {
+            return type.getParameterType() + "[]";
+        }
+        return type.getName();
+    }
+
+    /**
+     * The type of the bean getter and setter of a property
+     */
+    private static String getAccessorType(ReturnType type) {
+        if (type.isList() && type.isParameterTypeEnum()) {
+            return "java.util.List<" + type.getParameterType() + ">";
+        }
+        if (type.isEnum() && type.isArray()) {
+            return type.getParameterType() + "[]";
+        }
+        if (type.isEnum()) {
+            return type.getName();
+        }
+        return getFieldType(type);
+    }
+
+    private String getInitialValue(PropertyModel property) throws IOException {
+        JavaType javaType = property.getReadMethod() != null
+            ? property.getReadMethod().getReturnType() : property.getWriteMethod().getParameterTypes()[0];
+        if (javaType.isPrimitive()) {
+            return "boolean".equals(javaType.getName()) ? "false" : "0";
+        }
+        ReturnType type = resolver.getType(javaType);
+        if (type.isList() && !resolver.getConfig().isLazyLists()) {
+            String fieldType = getFieldType(type);
+            return "new " + fieldType.substring(0, fieldType.length() - 2) + "[0]";
+        }
+        return "null";
+    }
+
+    private static MethodModel getMethod(PropertyModel property) {
+        return property.getReadMethod() != null ? property.getReadMethod() : property.getWriteMethod();
+    }
+
+    private static String getPropertyName(PropertyModel property) {
+        return ReturnType.getPropertyName(getMethod(property).getName());
+    }
+
+    /**
+     * The java name of the field of a property, a keyword gets a trailing underscore
+     * and keeps its javascript name in the {@code @JsProperty}
+     */
+    private static String getFieldName(PropertyModel property) {
+        String name = getPropertyName(property);
+        return KEYWORDS.contains(name) ? name + "_" : name;
+    }
+}
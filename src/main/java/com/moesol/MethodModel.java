@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+/**
+ * A method read from a class file.
+ * The generic signature is used for the parameter and return types when present.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class MethodModel {
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private final String name;
+    private final int access;
+    private final String descriptor;
+    private final String signature;
+    private JavaType[] parameterTypes;
+    private JavaType returnType;
+
+    /**
+     * Constructor
+     * @param name method name
+     * @param access access flags
+     * @param descriptor erased method descriptor
+     * @param signature generic signature, may be null
+     */
+    public MethodModel(String name, int access, String descriptor, String signature) {
+        this.name = name;
+        this.access = access;
+        this.descriptor = descriptor;
+        this.signature = signature;
+    }
+
+    /**
+     * @return the method name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the erased method descriptor
+     */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * @return the access flags
+     */
+    int getAccess() {
+        return access;
+    }
+
+    /**
+     * @return the generic signature or null
+     */
+    String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return true for public, non static methods written in source
+     */
+    public boolean isBeanCandidate() {
+        return (access & ACC_PUBLIC) != 0
+            && (access & (ACC_STATIC | ACC_BRIDGE | ACC_SYNTHETIC)) == 0;
+    }
+
+    /**
+     * @return the number of parameters
+     */
+    public int getParameterCount() {
+        return getParameterTypes().length;
+    }
+
+    /**
+     * @return the parameter types
+     */
+    public JavaType[] getParameterTypes() {
+        parse();
+        return parameterTypes.clone();
+    }
+
+    /**
+     * @return the return type
+     */
+    public JavaType getReturnType() {
+        parse();
+        return returnType;
+    }
+
+    /**
+     * Erased descriptor of the return type, used to pair getters with setters.
+     * @return 
+     */
+    String getReturnDescriptor() {
+        return descriptor.substring(descriptor.indexOf(')') + 1);
+    }
+
+    /**
+     * Erased descriptor of the first parameter or null if there are none.
+     * @return 
+     */
+    String getFirstParameterDescriptor() {
+        JavaType[] erased = SignatureParser.parseMethod(descriptor);
+        if (erased.length < 2) {
+            return null;
+        }
+        return erased[0].getDescriptor();
+    }
+
+    private synchronized void parse() {
+        if (returnType != null) {
+            return;
+        }
+        JavaType[] types = SignatureParser.parseMethod(descriptor);
+        if (signature != null) {
+            JavaType[] generic = SignatureParser.parseMethod(signature);
+            // signatures can omit synthetic parameters, only trust them when they line up
+            if (generic.length == types.length) {
+                types = generic;
+            }
+        }
+        parameterTypes = new JavaType[types.length - 1];
+        System.arraycopy(types, 0, parameterTypes, 0, parameterTypes.length);
+        returnType = types[types.length - 1];
+    }
+}
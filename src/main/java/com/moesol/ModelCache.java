@@ -0,0 +1,383 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the property table and the resolved types of every generated class
+ * between builds, in a binary file that is memory mapped when the next run
+ * starts. An entry is only used while the class file and the class files of the
+ * types it references have the hashes they had when it was written, so classes
+ * that did not change are not introspected or resolved again. The file is named
+ * after the config, builds with different configs can share the directory.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class ModelCache {
+
+    private static final int MAGIC = 0x4a534f4d;
+    /**
+     * Bump when the layout of an entry changes
+     */
+    private static final int VERSION = 1;
+    private static final String MISSING = "-";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final String fingerprint;
+    /**
+     * The file written by the last run, null if there is none
+     */
+    private final ByteBuffer previous;
+    /**
+     * Offset of each entry in the file of the last run, by class name
+     */
+    private final Map<String, Integer> offsets = new HashMap<String, Integer>();
+    /**
+     * Entries of this run by class name, only touched by the submitting thread
+     */
+    private final Map<String, byte[]> current = new TreeMap<String, byte[]>();
+    private final AtomicInteger restored = new AtomicInteger();
+    private boolean changed;
+
+    private ModelCache(File file, String fingerprint, ByteBuffer previous) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.previous = previous;
+    }
+
+    /**
+     * Map the cache file of the config. A file written by another version or
+     * config, or a damaged one, is ignored and replaced by {@link #store()}.
+     *
+     * @param directory the cache directory, null for a cache that is never read or stored
+     * @param fingerprint describes the options the types were resolved with
+     * @return
+     * @throws IOException 
+     */
+    public static ModelCache load(File directory, String fingerprint) throws IOException {
+        if (directory == null) {
+            return new ModelCache(null, fingerprint, null);
+        }
+        String name = "js-overlay-model-" + ClassFileReader.hash(fingerprint.getBytes(UTF8)).substring(0, 12) + ".bin";
+        File file = new File(directory, name);
+        ModelCache cache = new ModelCache(file, fingerprint, file.isFile() ? map(file) : null);
+        if (cache.previous != null && !cache.index()) {
+            cache.offsets.clear();
+        }
+        return cache;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Find the entries in the file of the last run, only their names are read
+     *
+     * @return false if the file can not be used
+     */
+    private boolean index() {
+        ByteBuffer in = previous.duplicate();
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION || !fingerprint.equals(readString(in))) {
+                return false;
+            }
+            while (in.hasRemaining()) {
+                int offset = in.position();
+                int length = in.getInt();
+                offsets.put(readString(in), offset);
+                in.position(offset + 4 + length);
+            }
+            return true;
+        } catch (RuntimeException ex) {
+            // a truncated file underflows or positions past the end
+            return false;
+        }
+    }
+
+    /**
+     * @return the cache file, null if there is no cache directory
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of classes restored in this run
+     */
+    public int getRestored() {
+        return restored.get();
+    }
+
+    /**
+     * Give the introspector and resolver the cached table and types of a class,
+     * if the class and the types it references did not change. Safe to call from
+     * several threads.
+     *
+     * @param model
+     * @param repository used to hash the referenced types
+     * @param introspector
+     * @param resolver
+     * @return true if the class was restored
+     * @throws IOException 
+     */
+    public boolean restore(ClassModel model, ClassRepository repository, BeanIntrospector introspector,
+        TypeResolver resolver) throws IOException {
+        Integer offset = offsets.get(model.getName());
+        if (offset == null) {
+            return false;
+        }
+        ByteBuffer in = previous.duplicate();
+        PropertyModel[] properties;
+        ReturnType[] types;
+        try {
+            in.position(offset + 4);
+            readString(in);
+            if (!isCurrent(in, model, repository)) {
+                return false;
+            }
+            properties = new PropertyModel[in.getInt()];
+            types = new ReturnType[properties.length * 2];
+            for (int i = 0; i < properties.length; i++) {
+                String name = readString(in);
+                MethodModel read = readMethod(in);
+                types[i * 2] = read == null ? null : ReturnType.read(in);
+                MethodModel write = readMethod(in);
+                types[i * 2 + 1] = write == null ? null : ReturnType.read(in);
+                properties[i] = new PropertyModel(name, read, write);
+            }
+        } catch (RuntimeException ex) {
+            return false;
+        }
+        if (!introspector.add(model.getName(), new PropertyTable(properties))) {
+            return false;
+        }
+        for (int i = 0; i < properties.length; i++) {
+            if (types[i * 2] != null) {
+                resolver.add(properties[i].getReadMethod(), types[i * 2]);
+            }
+            if (types[i * 2 + 1] != null) {
+                resolver.add(properties[i].getWriteMethod(), types[i * 2 + 1]);
+            }
+        }
+        restored.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Carry the entry of a class that was not generated in this run over to the new file
+     *
+     * @param model
+     * @param repository used to hash the referenced types
+     * @throws IOException 
+     */
+    public void keep(ClassModel model, ClassRepository repository) throws IOException {
+        Integer offset = offsets.get(model.getName());
+        if (offset == null) {
+            return;
+        }
+        ByteBuffer in = previous.duplicate();
+        try {
+            in.position(offset);
+            byte[] entry = new byte[4 + in.getInt()];
+            readString(in);
+            if (isCurrent(in, model, repository)) {
+                in.position(offset);
+                in.get(entry);
+                current.put(model.getName(), entry);
+            }
+        } catch (RuntimeException ex) {
+            // left out, the class is cached again when it is generated
+        }
+    }
+
+    /**
+     * Record the table and types of a class generated in this run
+     *
+     * @param model
+     * @param references binary names of the types the table and types depend on
+     * @param introspector
+     * @param resolver
+     * @param repository used to hash the referenced types
+     * @throws IOException 
+     */
+    public void record(ClassModel model, Iterable<String> references, BeanIntrospector introspector,
+        TypeResolver resolver, ClassRepository repository) throws IOException {
+        if (file == null || model.isEnum()) {
+            return;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bos);
+        // the length of the entry is filled in below
+        out.writeInt(0);
+        writeString(out, model.getName());
+        writeString(out, model.getHash());
+        Map<String, String> hashes = new TreeMap<String, String>();
+        for (String ref : references) {
+            if (!ref.equals(model.getName())) {
+                hashes.put(ref, hashOf(ref, repository));
+            }
+        }
+        out.writeInt(hashes.size());
+        for (Map.Entry<String, String> ref : hashes.entrySet()) {
+            writeString(out, ref.getKey());
+            writeString(out, ref.getValue());
+        }
+        PropertyTable table = introspector.getProperties(model);
+        out.writeInt(table.size());
+        for (PropertyModel property : table) {
+            writeString(out, property.getName());
+            writeMethod(out, property.getReadMethod(), resolver);
+            writeMethod(out, property.getWriteMethod(), resolver);
+        }
+        out.close();
+        byte[] entry = bos.toByteArray();
+        ByteBuffer.wrap(entry).putInt(0, entry.length - 4);
+        current.put(model.getName(), entry);
+        changed = true;
+    }
+
+    /**
+     * Write the entries of this run to a new file and replace the old one with it,
+     * so builds sharing the directory never map a partly written file.
+     * Nothing is written if every entry was carried over.
+     *
+     * @return false if the old file could not be replaced
+     * @throws IOException 
+     */
+    public boolean store() throws IOException {
+        if (file == null || (!changed && current.size() == offsets.size())) {
+            return true;
+        }
+        File directory = file.getParentFile();
+        directory.mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, fingerprint);
+            for (byte[] entry : current.values()) {
+                out.write(entry);
+            }
+        } finally {
+            out.close();
+        }
+        // a mapped file can not be replaced on some platforms
+        if (tmp.renameTo(file) || (file.delete() && tmp.renameTo(file))) {
+            return true;
+        }
+        tmp.delete();
+        return false;
+    }
+
+    /**
+     * The class file hashes of the entry must match the current class files
+     */
+    private static boolean isCurrent(ByteBuffer in, ClassModel model, ClassRepository repository) throws IOException {
+        if (!model.getHash().equals(readString(in))) {
+            return false;
+        }
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            String ref = readString(in);
+            if (!readString(in).equals(hashOf(ref, repository))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String hashOf(String name, ClassRepository repository) throws IOException {
+        String hash = repository.getHash(name);
+        return hash == null ? MISSING : hash;
+    }
+
+    private static void writeMethod(DataOutputStream out, MethodModel method, TypeResolver resolver) throws IOException {
+        if (method == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        writeString(out, method.getName());
+        out.writeInt(method.getAccess());
+        writeString(out, method.getDescriptor());
+        writeString(out, method.getSignature());
+        resolver.getType(method).write(out);
+    }
+
+    private static MethodModel readMethod(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        String name = readString(in);
+        int access = in.getInt();
+        String descriptor = readString(in);
+        return new MethodModel(name, access, descriptor, readString(in));
+    }
+
+    /**
+     * Write a UTF-8 string that may be null
+     * @param out
+     * @param s
+     * @throws IOException 
+     */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(DataOutputStream, String)}
+     * @param in
+     * @return 
+     */
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renames packages with an ordered list of {@link PackageMapping}s.
+ * A rule matches a package equal to its from package or any sub package of it,
+ * the first matching rule wins. Results are cached per source package.
+ * Safe to use from several threads.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class PackageMapper {
+
+    private final String[] from;
+    private final String[] to;
+    private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Constructor
+     * @param mappings the rules in the order they are tried, incomplete rules are ignored
+     */
+    public PackageMapper(List<PackageMapping> mappings) {
+        List<PackageMapping> rules = new ArrayList<PackageMapping>();
+        for (PackageMapping mapping : mappings) {
+            if (mapping.getFrom() != null && mapping.getTo() != null) {
+                rules.add(mapping);
+            }
+        }
+        from = new String[rules.size()];
+        to = new String[rules.size()];
+        for (int i = 0; i < from.length; i++) {
+            from[i] = rules.get(i).getFrom();
+            to[i] = rules.get(i).getTo();
+        }
+    }
+
+    /**
+     * Map a package name
+     * @param packageName
+     * @return the new package name, or packageName if no rule matches
+     */
+    public String map(String packageName) {
+        String mapped = cache.get(packageName);
+        if (mapped == null) {
+            mapped = packageName;
+            for (int i = 0; i < from.length; i++) {
+                if (packageName.startsWith(from[i])
+                    && (packageName.length() == from[i].length() || packageName.charAt(from[i].length()) == '.')) {
+                    mapped = to[i] + packageName.substring(from[i].length());
+                    break;
+                }
+            }
+            cache.putIfAbsent(packageName, mapped);
+        }
+        return mapped;
+    }
+
+    /**
+     * Map the package of a binary class name, keeping the class name
+     * @param className
+     * @return 
+     */
+    public String mapClassName(String className) {
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot == -1) {
+            return className;
+        }
+        return map(className.substring(0, lastDot)) + className.substring(lastDot);
+    }
+}
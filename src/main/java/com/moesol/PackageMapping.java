@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+/**
+ * One package rename rule, configured in the pom as
+ * <pre>
+ * &lt;packageMapping&gt;
+ *   &lt;from&gt;com.foo.schema&lt;/from&gt;
+ *   &lt;to&gt;com.foo.client.schema&lt;/to&gt;
+ * &lt;/packageMapping&gt;
+ * </pre>
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class PackageMapping {
+
+    /**
+     * The package, and its sub packages, to rename
+     */
+    private String from;
+    /**
+     * The new package name
+     */
+    private String to;
+
+    /**
+     * Constructor used by maven
+     */
+    public PackageMapping() {
+    }
+
+    /**
+     * Constructor
+     * @param from
+     * @param to 
+     */
+    public PackageMapping(String from, String to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @return the from
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * @param from the from to set
+     */
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    /**
+     * @return the to
+     */
+    public String getTo() {
+        return to;
+    }
+
+    /**
+     * @param to the to to set
+     */
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    @Override
+    public String toString() {
+        return from + "->" + to;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+/**
+ * Lists of java types that are generated as a helper backed by one of GWT's
+ * typed javascript arrays. The helper reads and writes the javascript array in
+ * place, values are never boxed or copied.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public enum PrimitiveList {
+
+    STRING("StringListHelper", "JsArrayString", "String", "java.lang.String"),
+    INTEGER("IntegerListHelper", "JsArrayInteger", "int", "java.lang.Integer", "java.lang.Short", "java.lang.Byte"),
+    NUMBER("NumberListHelper", "JsArrayNumber", "double", "java.lang.Double", "java.lang.Float", "java.lang.Long", "java.lang.Number"),
+    BOOLEAN("BooleanListHelper", "JsArrayBoolean", "boolean", "java.lang.Boolean");
+
+    private final String helperName;
+    private final String arrayName;
+    private final String valueType;
+    private final String[] elementTypes;
+
+    private PrimitiveList(String helperName, String arrayName, String valueType, String... elementTypes) {
+        this.helperName = helperName;
+        this.arrayName = arrayName;
+        this.valueType = valueType;
+        this.elementTypes = elementTypes;
+    }
+
+    /**
+     * Find the helper for a list element type
+     * @param elementType binary name of the element type
+     * @return the helper or null if the list is not backed by a typed array
+     */
+    public static PrimitiveList forElementType(String elementType) {
+        for (PrimitiveList list : values()) {
+            for (String name : list.elementTypes) {
+                if (name.equals(elementType)) {
+                    return list;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return simple name of the generated helper class
+     */
+    public String getHelperName() {
+        return helperName;
+    }
+
+    /**
+     * @return simple name of the GWT array class in com.google.gwt.core.client
+     */
+    public String getArrayName() {
+        return arrayName;
+    }
+
+    /**
+     * @return fully qualified name of the GWT array class
+     */
+    public String getQualifiedArrayName() {
+        return "com.google.gwt.core.client." + arrayName;
+    }
+
+    /**
+     * @return type of the values read and written by the helper
+     */
+    public String getValueType() {
+        return valueType;
+    }
+}
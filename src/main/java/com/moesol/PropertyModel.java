@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+/**
+ * A bean property made of a getter and/or setter read from a class file.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class PropertyModel {
+
+    private final String name;
+    private final MethodModel readMethod;
+    private final MethodModel writeMethod;
+
+    /**
+     * Constructor
+     * @param name property name
+     * @param readMethod getter, may be null
+     * @param writeMethod setter, may be null
+     */
+    public PropertyModel(String name, MethodModel readMethod, MethodModel writeMethod) {
+        this.name = name;
+        this.readMethod = readMethod;
+        this.writeMethod = writeMethod;
+    }
+
+    /**
+     * @return the property name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the getter or null
+     */
+    public MethodModel getReadMethod() {
+        return readMethod;
+    }
+
+    /**
+     * @return the setter or null
+     */
+    public MethodModel getWriteMethod() {
+        return writeMethod;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * The bean properties of one class, sorted by name. Immutable.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class PropertyTable implements Iterable<PropertyModel> {
+
+    private final PropertyModel[] properties;
+
+    /**
+     * Constructor
+     * @param properties sorted by name, the array is not copied
+     */
+    PropertyTable(PropertyModel[] properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return the number of properties
+     */
+    public int size() {
+        return properties.length;
+    }
+
+    /**
+     * @param index
+     * @return the property at index
+     */
+    public PropertyModel get(int index) {
+        return properties[index];
+    }
+
+    /**
+     * @param name
+     * @return the property with the name or null
+     */
+    public PropertyModel find(String name) {
+        int low = 0;
+        int high = properties.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = properties[mid].getName().compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return properties[mid];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Iterator<PropertyModel> iterator() {
+        return Collections.unmodifiableList(Arrays.asList(properties)).iterator();
+    }
+}
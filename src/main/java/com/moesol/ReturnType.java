@@ -15,198 +15,230 @@
  */
 package com.moesol;
 
-import java.beans.Introspector;
-import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
+ * A javascript friendly description of a property type, created by {@link TypeResolver}.
+ * Immutable, so resolved types are shared between properties and threads.
  *
  * @author summersb
  */
 public class ReturnType {
 
-    /**
-     * @return the config
-     */
-    public static Config getConfig() {
-        return gConfig;
-    }
-
-    /**
-     * @param aConfig the config to set
-     */
-    public static void setConfig(Config aConfig) {
-        gConfig = aConfig;
-    }
-
-    /**
-     * Get the return type for a method, if void then get the 
-     * type of the first parameter.
-     * @param method
-     * @return 
-     */
-    private static ReturnType getReturnType(Method method) {
-        ReturnType theType = new ReturnType();
-        theType.type = method.getReturnType();
-        if ("void".equals(theType.type.getName())) {
-            // its a set method, get the parameter type
-            theType.type = method.getParameterTypes()[0];
-        }
-        return theType;
-    }
+    private static final int DATE = 1;
+    private static final int LIST = 2;
+    private static final int ARRAY = 4;
+    private static final int ENUM = 8;
+    private static final int PARAMETER_ENUM = 16;
+    private static final int INTERFACE = 32;
 
     /**
      * Name of the return type
      */
-    private String name;
+    private final String name;
     /**
      * True if this type is a Date
      */
-    private boolean date;
+    private final boolean date;
     /**
      * True if this type is a Java List
      */
-    private boolean list;
+    private final boolean list;
     /**
      * True if this type is a primitive array
      */
-    private boolean array;
+    private final boolean array;
     /**
      * True if this type is an Enum
      */
-    private boolean enm;
+    private final boolean enm;
     /**
      * True if this type is a Parameter type, such as generics
      */
-    private String parameterType;
+    private final String parameterType;
     /**
      * True if the parameter type is an Enum
      */
-    private boolean parameterTypeEnum;
+    private final boolean parameterTypeEnum;
+    private final String parameterImplType;
+    private final String implName;
+    /**
+     * Interface name of the type, or of the element type for arrays and lists
+     */
+    private final String interfaceName;
+    /**
+     * Jso name of the type, or of the element type for arrays and lists
+     */
+    private final String jsoName;
     /**
-     * Config object for the schema
+     * True if the type was resolved for generated interfaces
      */
-    private static Config gConfig;
-    private String parameterImplType;
-    private Class<?> type;
+    private final boolean generateInterface;
+    /**
+     * The typed array helper of a list of java types, null for other types
+     */
+    private final PrimitiveList primitiveList;
+
+    private ReturnType(String name, boolean date, boolean list, boolean array, boolean enm,
+        String parameterType, boolean parameterTypeEnum, String parameterImplType, String implName,
+        String interfaceName, String jsoName, boolean generateInterface) {
+        this(name, date, list, array, enm, parameterType, parameterTypeEnum, parameterImplType, implName,
+            interfaceName, jsoName, generateInterface, null);
+    }
+
+    private ReturnType(String name, boolean date, boolean list, boolean array, boolean enm,
+        String parameterType, boolean parameterTypeEnum, String parameterImplType, String implName,
+        String interfaceName, String jsoName, boolean generateInterface, PrimitiveList primitiveList) {
+        this.name = name;
+        this.date = date;
+        this.list = list;
+        this.array = array;
+        this.enm = enm;
+        this.parameterType = parameterType;
+        this.parameterTypeEnum = parameterTypeEnum;
+        this.parameterImplType = parameterImplType;
+        this.implName = implName;
+        this.interfaceName = interfaceName;
+        this.jsoName = jsoName;
+        this.generateInterface = generateInterface;
+        this.primitiveList = primitiveList;
+    }
 
     /**
-     * Changes the first character of the method name to lower case.
-     * @param name
+     * An XMLGregorianCalendar
+     * @param generateInterface
      * @return 
      */
-    String getPropertyName(String name) {
-        if (name.startsWith("get") || name.startsWith("set")) {
-            name = name.substring(3);
-        } else if (name.startsWith("is")) {
-            name = name.substring(2);
-        }
-        name = Introspector.decapitalize(name);
-        return name;
+    static ReturnType date(boolean generateInterface) {
+        return date(false, generateInterface);
     }
 
     /**
-     * Returns a javascript friendly type for the java type.
-     * Converts an XMLGregorianCalendar type to an internal date
-     * which is converted to a String wrapper around the long of the data.
-     * Appends Jso to all non primitive and java.xxxx types
-     * @param method
+     * An XMLGregorianCalendar, exposed as a String or as epoch milliseconds
+     * @param epochMillis true to expose the date as a double of epoch milliseconds
+     * @param generateInterface
      * @return 
      */
-    static ReturnType getType(Method method) {
-        ReturnType theType = getReturnType(method);
-        if (theType.type.getName().equals("javax.xml.datatype.XMLGregorianCalendar")) {
-            theType.setName("date");
-            theType.setDate(true);
-            return theType;
-        }
-        if (theType.type.isArray()) {
-            theType.setParameterType(getClassNameType(theType.type.getComponentType(), getConfig().isGenerateInterface()));
-            theType.setArray(true);
-            if (theType.type.getComponentType().isEnum()) {
-                theType.setParameterTypeEnum(true);
-                theType.setEnum(true);
-            }
-            return theType;
-        }
-        if (getGenericTypes(method, theType)) {
-            return theType;
-        }
-        if (theType.type.isEnum()) {
-            theType.setEnum(true);
-        }
-        theType.setName(getClassNameType(theType.type, getConfig().isGenerateInterface()));
-        return theType;
-    }
-
-    /**
-     * Checks to see if the method gets or sets generic types and updates theType 
-     * as required
-     * @param type
-     * @param method
-     * @param theType
-     * @return true if a generic type was found
-     */
-    private static boolean getGenericTypes(Method method, ReturnType theType) {
-        Class<?> type = theType.type;
-        Class<?>[] interfaces = type.getInterfaces();
-        for (Class<?> cls : interfaces) {
-            if (cls.getName().equals("java.util.Collection")) {
-                Type genericReturnType = method.getGenericReturnType();
-                if ("void".equals(genericReturnType.toString())) {
-                    genericReturnType = method.getGenericParameterTypes()[0];
-                }
-                ParameterizedType pt = (ParameterizedType) genericReturnType;
-                Class t = (Class) pt.getActualTypeArguments()[0];
-                if (pt.getClass().isEnum()) {
-                    theType.setEnum(true);
-                }
-                theType.setParameterType(getClassNameType(t, getConfig().isGenerateInterface()));
-                theType.setParameterImplType(getClassNameType(t, false));
-                if (t.isEnum()) {
-                    theType.setParameterTypeEnum(true);
-                }
-                if (theType.getParameterType().startsWith("java")) {
-                    // java types do not extend JavascriptObject
-                    theType.setArray(true);
-                } else {
-                    theType.setList(true);
-                }
-                return true;
-            }
-        }
-        return false;
+    static ReturnType date(boolean epochMillis, boolean generateInterface) {
+        return new ReturnType(epochMillis ? "double" : "date", true, false, false, false, null, false, null, null,
+            null, null, generateInterface);
     }
-    
+
+    /**
+     * A java array
+     * @param interfaceName interface name of the component type
+     * @param jsoName jso name of the component type
+     * @param enm true if the component type is an enum
+     * @param generateInterface
+     * @return 
+     */
+    static ReturnType array(String interfaceName, String jsoName, boolean enm, boolean generateInterface) {
+        return new ReturnType(null, false, false, true, enm, generateInterface ? interfaceName : jsoName, enm,
+            null, null, interfaceName, jsoName, generateInterface);
+    }
+
     /**
-     * Get the new package and class name for a Class.
-     * Appends Jso to any non java.xxxx type if not using interfaces
-     * otherwise adds a I to the front of the type
-     * @param type
+     * A java.util.Collection. Lists of java types are arrays since they do not extend JavascriptObject
+     * @param interfaceName interface name of the element type
+     * @param jsoName jso name of the element type
+     * @param enm true if the element type is an enum
+     * @param implName name of the collection type
+     * @param generateInterface
      * @return 
      */
-    private static String getClassNameType(Class<?> type, boolean genInterface) {
-        String name = type.getName();
-        int lastDot = name.lastIndexOf(".");
-        if (lastDot == -1) {
-            return name;
+    static ReturnType collection(String interfaceName, String jsoName, boolean enm, String implName, boolean generateInterface) {
+        return collection(interfaceName, jsoName, enm, implName, false, generateInterface);
+    }
+
+    /**
+     * A java.util.Collection. With typedLists, lists of strings, boxed numbers and booleans use a
+     * {@link PrimitiveList} helper, lists of other java types are arrays since they do not extend JavascriptObject
+     * @param interfaceName interface name of the element type
+     * @param jsoName jso name of the element type
+     * @param enm true if the element type is an enum
+     * @param implName name of the collection type
+     * @param typedLists true to use the {@link PrimitiveList} helpers
+     * @param generateInterface
+     * @return 
+     */
+    static ReturnType collection(String interfaceName, String jsoName, boolean enm, String implName, boolean typedLists, boolean generateInterface) {
+        String parameterType = generateInterface ? interfaceName : jsoName;
+        PrimitiveList primitiveList = typedLists ? PrimitiveList.forElementType(parameterType) : null;
+        if (primitiveList != null) {
+            return new ReturnType(null, false, true, false, false, parameterType, false,
+                jsoName, implName, interfaceName, jsoName, generateInterface, primitiveList);
         }
-        ClassInfo ci = new ClassInfo(getConfig());
-        ci.setPackageName(name);
-        name = ci.getNewPackageName();
-        if (name.startsWith("java") == false) {
-            name = name.replace("$", "_");
-            if(genInterface && !type.isEnum()){
-                lastDot = name.lastIndexOf(".");
-                name = name.substring(0, lastDot+1) + "I" + name.substring(lastDot+1);
-            }else if (!type.isEnum()){
-                name += "Jso";
-            }
+        boolean javaType = parameterType.startsWith("java");
+        return new ReturnType(null, false, !javaType, javaType, false, parameterType, enm,
+            jsoName, implName, interfaceName, jsoName, generateInterface);
+    }
+
+    /**
+     * Any other type
+     * @param interfaceName
+     * @param jsoName
+     * @param enm true if the type is an enum
+     * @param generateInterface
+     * @return 
+     */
+    static ReturnType simple(String interfaceName, String jsoName, boolean enm, boolean generateInterface) {
+        return new ReturnType(generateInterface ? interfaceName : jsoName, false, false, false, enm, null, false,
+            null, jsoName, interfaceName, jsoName, generateInterface);
+    }
+
+    /**
+     * Write every field, read back by {@link #read(ByteBuffer)}
+     * @param out
+     * @throws IOException 
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeByte((date ? DATE : 0) | (list ? LIST : 0) | (array ? ARRAY : 0) | (enm ? ENUM : 0)
+            | (parameterTypeEnum ? PARAMETER_ENUM : 0) | (generateInterface ? INTERFACE : 0));
+        ModelCache.writeString(out, name);
+        ModelCache.writeString(out, parameterType);
+        ModelCache.writeString(out, parameterImplType);
+        ModelCache.writeString(out, implName);
+        ModelCache.writeString(out, interfaceName);
+        ModelCache.writeString(out, jsoName);
+        ModelCache.writeString(out, primitiveList == null ? null : primitiveList.name());
+    }
+
+    /**
+     * Read a type written by {@link #write(DataOutputStream)}
+     * @param in
+     * @return 
+     */
+    static ReturnType read(ByteBuffer in) {
+        int flags = in.get();
+        String name = ModelCache.readString(in);
+        String parameterType = ModelCache.readString(in);
+        String parameterImplType = ModelCache.readString(in);
+        String implName = ModelCache.readString(in);
+        String interfaceName = ModelCache.readString(in);
+        String jsoName = ModelCache.readString(in);
+        String primitiveList = ModelCache.readString(in);
+        return new ReturnType(name, (flags & DATE) != 0, (flags & LIST) != 0, (flags & ARRAY) != 0, (flags & ENUM) != 0,
+            parameterType, (flags & PARAMETER_ENUM) != 0, parameterImplType, implName, interfaceName, jsoName,
+            (flags & INTERFACE) != 0, primitiveList == null ? null : PrimitiveList.valueOf(primitiveList));
+    }
+
+    /**
+     * Changes the first character of the method name to lower case.
+     * @param name
+     * @return 
+     */
+    static String getPropertyName(String name) {
+        if (name.startsWith("get") || name.startsWith("set")) {
+            name = name.substring(3);
+        } else if (name.startsWith("is")) {
+            name = name.substring(2);
         }
+        name = BeanIntrospector.decapitalize(name);
         return name;
     }
-    
+
     /**
      * Get the fully qualified type of this Type.
      * This will include [] if the type is an array or ListHelper if a List
@@ -218,7 +250,10 @@ public class ReturnType {
             return getParameterType() + "[]";
         }
         if(isDate()){
-            return "java.lang.String";
+            return getDateType();
+        }
+        if(isPrimitiveList()){
+            return topPackage.getNewPackageName() + "." + primitiveList.getHelperName();
         }
         if(isList()){
             return topPackage.getNewPackageName() + ".ListHelper<" + getParameterType() + ">";
@@ -237,7 +272,7 @@ public class ReturnType {
             return  getParameterImplType() + "[]"; //getClassNameType(type, false) + "[]";
         }
         if(isDate()){
-            return "java.lang.String";
+            return getDateType();
         }
         return getName();
     }
@@ -251,7 +286,10 @@ public class ReturnType {
             return getParameterType() + "[]";
         }
         if(isDate()){
-            return "java.lang.String";
+            return getDateType();
+        }
+        if(isPrimitiveList()){
+            return topPackage.getNewPackageName() + "." + primitiveList.getHelperName();
         }
         if(isList()){
             return topPackage.getNewPackageName() + ".ListHelper<" + getImplName() + ">";
@@ -268,7 +306,7 @@ public class ReturnType {
             return getParameterType() + "[]";
         }
         if(isDate()){
-            return "java.lang.String";
+            return getDateType();
         }
         return getImplName();
     }
@@ -277,7 +315,7 @@ public class ReturnType {
      * Return a cast string if this type has an interface otherwise return an empty string
      */
     String getImplCast(ClassInfo topPackage){
-        if(getConfig().isGenerateInterface() && !getQualifiedReturnType(topPackage).startsWith("java.")){
+        if(isGenerateInterface() && !getQualifiedReturnType(topPackage).startsWith("java.")){
             return "(" + getQualifiedReturnImplType(topPackage) + ") ";
         }
         return "";
@@ -288,23 +326,40 @@ public class ReturnType {
      * @return 
      */
     String getImplName(){
-        return getClassNameType(type, false);
+        return implName;
     }
 
+
     /**
-     * @return the name
+     * @return the interface name of the type, or of the element type for arrays and lists
      */
-    public String getName() {
-        return name;
+    public String getInterfaceName() {
+        return interfaceName;
     }
 
     /**
-     * @param name the name to set
+     * @return the jso name of the type, or of the element type for arrays and lists
      */
-    public void setName(String name) {
-        this.name = name;
+    public String getJsoName() {
+        return jsoName;
+    }
+
+    /**
+     * @return true if the type was resolved for generated interfaces
+     */
+    public boolean isGenerateInterface() {
+        return generateInterface;
+    }
+
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
     }
 
+
     /**
      * @return the date
      */
@@ -313,12 +368,17 @@ public class ReturnType {
     }
 
     /**
-     * @param date the date to set
+     * @return true if this is a date exposed as epoch milliseconds
      */
-    public void setDate(boolean date) {
-        this.date = date;
+    public boolean isEpochMillis() {
+        return date && "double".equals(name);
+    }
+
+    private String getDateType() {
+        return isEpochMillis() ? "double" : "java.lang.String";
     }
 
+
     /**
      * @return the list
      */
@@ -326,12 +386,6 @@ public class ReturnType {
         return list;
     }
 
-    /**
-     * @param list the list to set
-     */
-    public void setList(boolean list) {
-        this.list = list;
-    }
 
     /**
      * @return the array
@@ -340,12 +394,6 @@ public class ReturnType {
         return array;
     }
 
-    /**
-     * @param array the array to set
-     */
-    public void setArray(boolean array) {
-        this.array = array;
-    }
 
     /**
      * @return the enm
@@ -354,12 +402,6 @@ public class ReturnType {
         return enm;
     }
 
-    /**
-     * @param enm the enm to set
-     */
-    public void setEnum(boolean enm) {
-        this.enm = enm;
-    }
 
     /**
      * @return the parameterType
@@ -368,27 +410,30 @@ public class ReturnType {
         return parameterType;
     }
 
+
     /**
-     * @param parameterType the parameterType to set
+     * @return true if this is a list backed by a typed javascript array
      */
-    public void setParameterType(String parameterType) {
-        this.parameterType = parameterType;
+    public boolean isPrimitiveList() {
+        return primitiveList != null;
     }
 
     /**
-     * @return the parameterTypeEnum
+     * @return the typed array helper of the list, null if it is not a {@link #isPrimitiveList()}
      */
-    public boolean isParameterTypeEnum() {
-        return parameterTypeEnum;
+    public PrimitiveList getPrimitiveList() {
+        return primitiveList;
     }
 
+
     /**
-     * @param parameterTypeEnum the parameterTypeEnum to set
+     * @return the parameterTypeEnum
      */
-    public void setParameterTypeEnum(boolean parameterTypeEnum) {
-        this.parameterTypeEnum = parameterTypeEnum;
+    public boolean isParameterTypeEnum() {
+        return parameterTypeEnum;
     }
 
+
     /**
      * @return the parameterImplType
      */
@@ -396,10 +441,4 @@ public class ReturnType {
         return parameterImplType;
     }
 
-    /**
-     * @param parameterImplType the parameterImplType to set
-     */
-    public void setParameterImplType(String parameterImplType) {
-        this.parameterImplType = parameterImplType;
-    }
 }
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses class file descriptors and generic signatures (JVMS 4.7.9.1) into {@link JavaType}s.
+ * Type variables are replaced by their first bound when it is declared on the
+ * method, otherwise by java.lang.Object.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+class SignatureParser {
+
+    private final String signature;
+    private int pos;
+    private final Map<String, JavaType> typeVariables = new HashMap<String, JavaType>();
+
+    private SignatureParser(String signature) {
+        this.signature = signature;
+    }
+
+    /**
+     * Parse a field descriptor or field signature
+     * @param signature
+     * @return 
+     */
+    static JavaType parseType(String signature) {
+        return new SignatureParser(signature).readType();
+    }
+
+    /**
+     * Parse a method descriptor or method signature.
+     * @param signature
+     * @return the parameter types followed by the return type
+     */
+    static JavaType[] parseMethod(String signature) {
+        SignatureParser parser = new SignatureParser(signature);
+        parser.readTypeParameters();
+        List<JavaType> types = new ArrayList<JavaType>();
+        parser.expect('(');
+        while (parser.peek() != ')') {
+            types.add(parser.readType());
+        }
+        parser.expect(')');
+        types.add(parser.readType());
+        return types.toArray(new JavaType[types.size()]);
+    }
+
+    private void readTypeParameters() {
+        if (peek() != '<') {
+            return;
+        }
+        pos++;
+        while (peek() != '>') {
+            int colon = signature.indexOf(':', pos);
+            String name = signature.substring(pos, colon);
+            pos = colon;
+            JavaType bound = null;
+            // an empty class bound is followed directly by an interface bound
+            while (peek() == ':') {
+                pos++;
+                if (peek() != ':') {
+                    JavaType type = readType();
+                    if (bound == null) {
+                        bound = type;
+                    }
+                }
+            }
+            typeVariables.put(name, bound == null ? JavaType.OBJECT : bound);
+        }
+        pos++;
+    }
+
+    private JavaType readType() {
+        char c = signature.charAt(pos++);
+        switch (c) {
+            case 'L':
+                return readClassType();
+            case 'T': {
+                int semi = signature.indexOf(';', pos);
+                String name = signature.substring(pos, semi);
+                pos = semi + 1;
+                JavaType bound = typeVariables.get(name);
+                return bound == null ? JavaType.OBJECT : bound;
+            }
+            case '[':
+                return JavaType.arrayOf(readType());
+            default:
+                return JavaType.primitive(c);
+        }
+    }
+
+    private JavaType readClassType() {
+        StringBuilder name = new StringBuilder();
+        List<JavaType> args = null;
+        while (true) {
+            char c = signature.charAt(pos++);
+            if (c == ';') {
+                break;
+            } else if (c == '<') {
+                args = readTypeArguments();
+            } else if (c == '.') {
+                // inner class of a parameterized outer class
+                name.append('$');
+                args = null;
+            } else if (c == '/') {
+                name.append('.');
+            } else {
+                name.append(c);
+            }
+        }
+        return JavaType.classType(name.toString(), args);
+    }
+
+    private List<JavaType> readTypeArguments() {
+        List<JavaType> args = new ArrayList<JavaType>();
+        while (peek() != '>') {
+            char c = peek();
+            if (c == '*') {
+                pos++;
+                args.add(JavaType.OBJECT);
+            } else if (c == '+') {
+                pos++;
+                args.add(readType());
+            } else if (c == '-') {
+                pos++;
+                readType();
+                args.add(JavaType.OBJECT);
+            } else {
+                args.add(readType());
+            }
+        }
+        pos++;
+        return args;
+    }
+
+    private char peek() {
+        return signature.charAt(pos);
+    }
+
+    private void expect(char c) {
+        if (signature.charAt(pos++) != c) {
+            throw new IllegalArgumentException("Invalid signature " + signature);
+        }
+    }
+}
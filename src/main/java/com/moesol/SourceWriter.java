@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes generated source only when it differs from the file on disk, so the
+ * modification time of unchanged files is kept and downstream compilers stay incremental.
+ * Counts the files and bytes written and the files skipped. Safe to use from several threads.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class SourceWriter {
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final GenerationMetrics metrics;
+
+    /**
+     * Constructor
+     */
+    public SourceWriter() {
+        this(new GenerationMetrics());
+    }
+
+    /**
+     * Constructor
+     * @param metrics times the writes
+     */
+    public SourceWriter(GenerationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Write the content to the file unless the file already has exactly that content
+     * @param file
+     * @param content
+     * @return true if the file was written
+     * @throws IOException 
+     */
+    public boolean write(File file, byte[] content) throws IOException {
+        GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.WRITE);
+        try {
+            if (file.length() == content.length && sameContent(file, content)) {
+                skipped.incrementAndGet();
+                return false;
+            }
+            FileOutputStream fos = new FileOutputStream(file);
+            try {
+                fos.write(content);
+            } finally {
+                fos.close();
+            }
+            written.incrementAndGet();
+            bytesWritten.addAndGet(content.length);
+            return true;
+        } finally {
+            metrics.exit(outer);
+        }
+    }
+
+    /**
+     * Compare the file to the content, only called when the sizes match
+     */
+    private static boolean sameContent(File file, byte[] content) throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        InputStream is = new BufferedInputStream(new FileInputStream(file), 8192);
+        try {
+            for (byte b : content) {
+                if (is.read() != (b & 0xff)) {
+                    return false;
+                }
+            }
+            return is.read() == -1;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @return the number of files written
+     */
+    public int getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return the number of files left alone because they had not changed
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the number of bytes in the files written
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the java types of bean properties to {@link ReturnType}s.
+ * One resolver is created per generator run, so executions with different
+ * configs never share state, and the results are cached for the run.
+ * Safe to use from several threads.
+ *
+ * @author summersb
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class TypeResolver {
+
+    private final Config config;
+    private final ClassRepository repository;
+    /**
+     * Resolved types by declared type, including generic arguments
+     */
+    private final ConcurrentMap<JavaType, ReturnType> types = new ConcurrentHashMap<JavaType, ReturnType>();
+    /**
+     * Interface and jso names by binary class name
+     */
+    private final ConcurrentMap<String, String[]> classNames = new ConcurrentHashMap<String, String[]>();
+    /**
+     * Types restored from the {@link ModelCache}, by method
+     */
+    private final ConcurrentMap<MethodModel, ReturnType> methodTypes = new ConcurrentHashMap<MethodModel, ReturnType>();
+
+    /**
+     * Constructor
+     * @param config the config of the run
+     * @param repository used to look up referenced types
+     */
+    public TypeResolver(Config config, ClassRepository repository) {
+        this.config = config;
+        this.repository = repository;
+    }
+
+    /**
+     * @return the config
+     */
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the repository
+     */
+    public ClassRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Get the return type for a method, if void then get the 
+     * type of the first parameter.
+     * @param method
+     * @return 
+     */
+    private static JavaType getReturnType(MethodModel method) {
+        JavaType type = method.getReturnType();
+        if ("void".equals(type.getName())) {
+            // its a set method, get the parameter type
+            type = method.getParameterTypes()[0];
+        }
+        return type;
+    }
+
+    /**
+     * Returns a javascript friendly type for a reflected method.
+     * @param method
+     * @return 
+     * @throws IOException if a class file can not be read
+     */
+    ReturnType getType(Method method) throws IOException {
+        Type type = method.getGenericReturnType();
+        if (void.class.equals(type)) {
+            type = method.getGenericParameterTypes()[0];
+        }
+        return getType(JavaType.forType(type));
+    }
+
+    /**
+     * Returns a javascript friendly type for a method read from a class file.
+     * @param method
+     * @return 
+     * @throws IOException if a class file can not be read
+     */
+    ReturnType getType(MethodModel method) throws IOException {
+        ReturnType type = methodTypes.get(method);
+        return type != null ? type : getType(getReturnType(method));
+    }
+
+    /**
+     * Use the type restored from the {@link ModelCache} for a method instead of resolving it
+     * @param method
+     * @param type 
+     */
+    void add(MethodModel method, ReturnType type) {
+        methodTypes.put(method, type);
+    }
+
+    /**
+     * Forget the restored types of the methods of a table that is no longer used
+     * @param table 
+     */
+    void remove(PropertyTable table) {
+        if (methodTypes.isEmpty()) {
+            return;
+        }
+        for (PropertyModel property : table) {
+            if (property.getReadMethod() != null) {
+                methodTypes.remove(property.getReadMethod());
+            }
+            if (property.getWriteMethod() != null) {
+                methodTypes.remove(property.getWriteMethod());
+            }
+        }
+    }
+
+    /**
+     * Returns a javascript friendly type for the java type.
+     * Types are resolved once per resolver and the shared result is returned after that.
+     * @param type
+     * @return 
+     * @throws IOException if a class file can not be read
+     */
+    ReturnType getType(JavaType type) throws IOException {
+        ReturnType theType = types.get(type);
+        if (theType == null) {
+            GenerationMetrics metrics = repository.getMetrics();
+            GenerationMetrics.Phase outer = metrics.enter(GenerationMetrics.Phase.RESOLVE);
+            try {
+                theType = resolve(type);
+            } finally {
+                metrics.exit(outer);
+            }
+            ReturnType existing = types.putIfAbsent(type, theType);
+            if (existing != null) {
+                theType = existing;
+            }
+        }
+        return theType;
+    }
+
+    /**
+     * Converts an XMLGregorianCalendar type to an internal date
+     * which is converted to a String wrapper around the long of the data.
+     * Appends Jso to all non primitive and java.xxxx types
+     * @param type
+     * @return 
+     */
+    private ReturnType resolve(JavaType type) throws IOException {
+        boolean genInterface = config.isGenerateInterface();
+        if (type.getName().equals("javax.xml.datatype.XMLGregorianCalendar")) {
+            return ReturnType.date(config.isEpochMillisDates(), genInterface);
+        }
+        if (type.isArray()) {
+            String[] names = getClassNames(type.getComponentType());
+            return ReturnType.array(names[0], names[1], isEnum(type.getComponentType()), genInterface);
+        }
+        if (!type.isPrimitive() && repository.hasInterface(type.getName(), "java.util.Collection")) {
+            List<JavaType> args = type.getTypeArguments();
+            JavaType t = args.isEmpty() ? JavaType.OBJECT : args.get(0);
+            String[] names = getClassNames(t);
+            // JsInterop fields are always typed arrays
+            boolean typedLists = config.isTypedLists() || config.isJsInterop();
+            return ReturnType.collection(names[0], names[1], isEnum(t), getClassNames(type)[1], typedLists, genInterface);
+        }
+        String[] names = getClassNames(type);
+        return ReturnType.simple(names[0], names[1], isEnum(type), genInterface);
+    }
+
+    private boolean isEnum(JavaType type) throws IOException {
+        return !type.isPrimitive() && !type.isArray() && repository.isEnum(type.getName());
+    }
+
+    /**
+     * Get the interface and jso names of a type, computed once per type name.
+     * @param type
+     * @return the interface name followed by the jso name
+     */
+    private String[] getClassNames(JavaType type) throws IOException {
+        String[] names = classNames.get(type.getName());
+        if (names == null) {
+            boolean enm = isEnum(type);
+            names = new String[]{getClassNameType(type, enm, true), getClassNameType(type, enm, false)};
+            classNames.putIfAbsent(type.getName(), names);
+        }
+        return names;
+    }
+    
+    /**
+     * Get the new package and class name for a type.
+     * Appends Jso to any non java.xxxx type if not using interfaces
+     * otherwise adds a I to the front of the type
+     * @param type
+     * @param enm true if the type is an enum
+     * @param genInterface
+     * @return 
+     */
+    private String getClassNameType(JavaType type, boolean enm, boolean genInterface) {
+        String name = type.getName();
+        int lastDot = name.lastIndexOf(".");
+        if (lastDot == -1) {
+            return name;
+        }
+        name = config.getPackageMapper().mapClassName(name);
+        if (name.startsWith("java") == false) {
+            name = name.replace("$", "_");
+            if(genInterface && !enm){
+                lastDot = name.lastIndexOf(".");
+                name = name.substring(0, lastDot+1) + "I" + name.substring(lastDot+1);
+            }else if (!enm){
+                name += "Jso";
+            }
+        }
+        return name;
+    }
+}
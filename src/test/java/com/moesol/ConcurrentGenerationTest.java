@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2011 Moebius Solutions, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.moesol;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.easymock.EasyMock;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Runs many generators with different configs at the same time and checks
+ * that each one writes the same source as when it runs alone.
+ *
+ * @author <a href="http://www.moesol.com/">Moebius Solutions, Inc.</a>
+ */
+public class ConcurrentGenerationTest {
+
+    private static final int GENERATORS = 16;
+    private static final String[] CLASSES = {"TestObject", "TestObject2", "Color", "TestObject$InnerEnum"};
+
+    @Test
+    public void testConcurrentGenerators() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            generate(createConfig("target/test-concurrent/expected" + i, i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(GENERATORS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Config>> futures = new ArrayList<Future<Config>>();
+            for (int i = 0; i < GENERATORS; i++) {
+                final Config config = createConfig("target/test-concurrent/run" + i, i);
+                futures.add(executor.submit(new Callable<Config>() {
+                    @Override
+                    public Config call() throws Exception {
+                        start.await();
+                        generate(config);
+                        return config;
+                    }
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < GENERATORS; i++) {
+                Config config = futures.get(i).get();
+                assertSameFiles(new File("target/test-concurrent/expected" + (i % 2)), new File(config.getOutputDirectory()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Even runs generate interfaces into a new package, odd runs generate plain overlays
+     */
+    private Config createConfig(String outputDirectory, int run) throws Exception {
+        FileUtils.deleteDirectory(new File(outputDirectory));
+        Config config = new Config();
+        Log log = EasyMock.createNiceMock(Log.class);
+        EasyMock.replay(log);
+        config.setLog(log);
+        config.setSourcePackage("com.moesol.test");
+        config.setOutputDirectory(outputDirectory);
+        config.setThreads(2);
+        if (run % 2 == 0) {
+            config.setGenerateInterface(true);
+            config.setOldPackage("com.moesol.test");
+            config.setNewPackage("com.moesol.test.concurrent");
+        }
+        return config;
+    }
+
+    private void generate(Config config) throws Exception {
+        JavaScriptOverlayGenerator gen = new JavaScriptOverlayGenerator(config);
+        List<ClassInfo> cis = new ArrayList<ClassInfo>();
+        for (String name : CLASSES) {
+            ClassInfo ci = new ClassInfo(config);
+            ci.setClassName(name);
+            ci.setPackageName("com.moesol.test");
+            cis.add(ci);
+        }
+        gen.writeJso(cis);
+    }
+
+    private void assertSameFiles(File expected, File actual) throws Exception {
+        List<String> names = FileUtils.getFileNames(expected, "**/*.java", null, false);
+        assertFalse(names.isEmpty());
+        assertEquals(names.size(), FileUtils.getFileNames(actual, "**/*.java", null, false).size());
+        for (String name : names) {
+            assertEquals(name, FileUtils.fileRead(new File(expected, name)), FileUtils.fileRead(new File(actual, name)));
+        }
+    }
+}
@@ -15,17 +15,27 @@
  */
 package com.moesol;
 
+import com.moesol.test.Color;
+import com.moesol.test.TestObject;
 import com.moesol.test.TestObject2;
 import java.beans.IntrospectionException;
+import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
 import javax.tools.JavaCompiler;
 import javax.tools.ToolProvider;
 import org.apache.maven.plugin.logging.Log;
@@ -79,10 +89,89 @@ public class JavaScriptOverlayGeneratorTest {
     }
 
     @Test
-    public void testGetMethods() throws IntrospectionException {
+    public void testPackageMappings() throws Exception {
+        config.setOldPackage("com.test");
+        config.setNewPackage("org.stuff");
+        config.setPackageMappings(Arrays.asList(
+            new PackageMapping("com.other.schema", "org.client"),
+            new PackageMapping("com.other", "org.other")));
+        PackageMapper mapper = config.getPackageMapper();
+        assertSame(mapper, config.getPackageMapper());
+        assertEquals("org.stuff", mapper.map("com.test"));
+        assertEquals("org.stuff.sub", mapper.map("com.test.sub"));
+        // only whole package names match and dots are not wildcards
+        assertEquals("com.testing", mapper.map("com.testing"));
+        assertEquals("comXtest", mapper.map("comXtest"));
+        // first matching rule wins
+        assertEquals("org.client.v1", mapper.map("com.other.schema.v1"));
+        assertEquals("org.other.misc", mapper.map("com.other.misc"));
+        assertEquals("org.client.Type$Inner", mapper.mapClassName("com.other.schema.Type$Inner"));
+        config.setNewPackage("org.changed");
+        assertEquals("org.changed", config.getPackageMapper().map("com.test"));
+    }
+
+    @Test
+    public void testGetMethods() throws Exception {
         Class<? extends TestObject2> aClass = new TestObject2().getClass();
-        PropertyDescriptor[] methods = gen.getMethods(aClass);
-        assertEquals(4, methods.length);
+        PropertyTable methods = gen.getMethods(aClass);
+        assertEquals(4, methods.size());
+        assertSame(methods, gen.getMethods(aClass));
+        assertEquals("isGetterOnly", methods.find("getterOnly").getReadMethod().getName());
+        assertNull(methods.find("getterOnly").getWriteMethod());
+        assertNull(methods.find("shouldNotAppear"));
+    }
+
+    @Test
+    public void testDecapitalize() {
+        for (String name : new String[]{"Bob", "BOb", "URL", "x", "X", "", "aB"}) {
+            assertEquals(Introspector.decapitalize(name), BeanIntrospector.decapitalize(name));
+        }
+    }
+
+    @Test
+    public void testClassModelMatchesIntrospector() throws Exception {
+        ClassRepository repository = gen.getRepository();
+        for (Class<?> cls : new Class[]{TestObject.class, TestObject2.class, CovariantBean.class}) {
+            PropertyDescriptor[] expected = Introspector.getBeanInfo(cls, Object.class).getPropertyDescriptors();
+            PropertyTable actual = gen.getMethods(cls);
+            assertEquals(expected.length, actual.size());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].getName(), actual.get(i).getName());
+                assertEquals(name(expected[i].getReadMethod()), name(actual.get(i).getReadMethod()));
+                assertEquals(name(expected[i].getWriteMethod()), name(actual.get(i).getWriteMethod()));
+            }
+        }
+        // the most specific return type of a covariant override, like the Introspector
+        Method read = Introspector.getBeanInfo(CovariantBean.class, Object.class).getPropertyDescriptors()[0].getReadMethod();
+        assertEquals(String.class, read.getReturnType());
+        assertEquals("Ljava/lang/String;", gen.getMethods(CovariantBean.class).find("value").getReadMethod().getReturnDescriptor());
+        assertTrue(repository.get(TestObject.class.getName()).isRootElement());
+        assertFalse(repository.get(TestObject2.class.getName()).isRootElement());
+        ClassModel color = repository.get(Color.class.getName());
+        assertTrue(color.isEnum());
+        assertEquals(Arrays.asList("RED", "BLUE"), color.getEnumConstants());
+        assertNull(repository.get("com.moesol.test.DoesNotExist"));
+    }
+
+    public static class BaseBean {
+        public Object getValue() {
+            return null;
+        }
+    }
+
+    public static class CovariantBean extends BaseBean {
+        @Override
+        public String getValue() {
+            return null;
+        }
+    }
+
+    private static String name(Method method) {
+        return method == null ? null : method.getName();
+    }
+
+    private static String name(MethodModel method) {
+        return method == null ? null : method.getName();
     }
 
     @Test
@@ -90,7 +179,7 @@ public class JavaScriptOverlayGeneratorTest {
         config.setOutputDirectory("target/gen-jso");
         gen.setLoader(Thread.currentThread().getContextClassLoader());
         List<ClassInfo> list = gen.processDirectory("com/moesol/test/", new File("target/gen-jso"));
-        assertEquals(5, list.size());
+        assertEquals(6, list.size());
         HashMap<String, ClassInfo> names = new HashMap<String, ClassInfo>();
         for (ClassInfo ci : list) {
             names.put(ci.getClassName(), ci);
@@ -130,14 +219,343 @@ public class JavaScriptOverlayGeneratorTest {
         config.setOutputDirectory("target/gen-jar");
         List<ClassInfo> list = gen.processJar(new File("target/gen-jar"));
         assertEquals(83, list.size());
+        for (ClassInfo ci : list) {
+            assertNotNull(ci.getModel());
+        }
+    }
 
-        outputDir.mkdirs();
-        list = gen.processJar(new File("target/gen-jar"));
-        assertEquals(0, list.size());
+    @Test
+    public void testScanSplitPackage() throws Exception {
+        // the package is split across a jar and a directory, one class is in both
+        File root = new File("target/test-split");
+        FileUtils.deleteDirectory(root);
+        File dir = new File(root, "classes/com/moesol/test");
+        assertTrue(dir.mkdirs());
+        FileUtils.copyFile(new File("target/test-classes/com/moesol/test/Color.class"), new File(dir, "Color.class"));
+        FileUtils.copyFile(new File("target/test-classes/com/moesol/test/TestObject.class"), new File(dir, "TestObject.class"));
+        File jar = new File(root, "split.jar");
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar));
+        // the class loader only finds a package in a jar that has its directory entry
+        jos.putNextEntry(new JarEntry("com/moesol/test/"));
+        jos.putNextEntry(new JarEntry("com/moesol/test/TestObject.class"));
+        jos.write(FileUtils.fileRead(new File("target/test-classes/com/moesol/test/TestObject.class"), "ISO-8859-1").getBytes("ISO-8859-1"));
+        jos.putNextEntry(new JarEntry("com/moesol/test/TestObject2.class"));
+        jos.write(FileUtils.fileRead(new File("target/test-classes/com/moesol/test/TestObject2.class"), "ISO-8859-1").getBytes("ISO-8859-1"));
+        jos.close();
+        URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL(), new File(root, "classes").toURI().toURL()}, null);
+        final List<String> found = new ArrayList<String>();
+        new ClassScanner(config, loader, new ClassRepository(loader)).scan("com/moesol/test/", new ClassScanner.Callback() {
+            @Override
+            public void found(ClassInfo classInfo) {
+                assertNotNull(classInfo.getModel());
+                found.add(classInfo.getOriginalName());
+            }
+        });
+        assertEquals(Arrays.asList("com.moesol.test.TestObject", "com.moesol.test.TestObject2", "com.moesol.test.Color"), found);
+    }
 
-        outputDir.setLastModified(0);
-        list = gen.processJar(new File("target/gen-jar"));
-        assertEquals(83, list.size());
+    @Test
+    public void testGenerateUsesTopPackageOfClasses() throws Exception {
+        File classes = new File("target/test-top-package/classes");
+        FileUtils.deleteDirectory(new File("target/test-top-package"));
+        for (String name : new String[]{"Color", "TestObject", "TestObject2", "TestObject$InnerEnum"}) {
+            FileUtils.copyFile(new File("target/test-classes/com/moesol/test/" + name + ".class"),
+                new File(classes, "com/moesol/test/" + name + ".class"));
+        }
+        // the source package has no classes of its own
+        config.setSourcePackage("com.moesol");
+        config.setClassLoader(new URLClassLoader(new URL[]{classes.toURI().toURL()}, null));
+        config.setOutputDirectory("target/test-top-package/stream");
+        gen.generate();
+        assertTrue(new File("target/test-top-package/stream/com/moesol/test/ListHelper.java").exists());
+        assertFalse(new File("target/test-top-package/stream/com/moesol/ListHelper.java").exists());
+        assertTrue(FileUtils.fileRead("target/test-top-package/stream/com/moesol/test/TestObjectJso.java")
+            .contains("com.moesol.test.JsonHelper.stringify("));
+    }
+
+    @Test
+    public void testGenerateStreaming() throws Exception {
+        config.setOutputDirectory("target/test-stream");
+        FileUtils.deleteDirectory(new File("target/test-stream"));
+        gen.generate();
+        File dir = new File("target/test-stream/com/moesol/test");
+        assertTrue(new File(dir, "TestObjectJso.java").exists());
+        assertTrue(new File(dir, "Color.java").exists());
+        assertTrue(new File(dir, "ListHelper.java").exists());
+        assertTrue(new File(dir, "JsonHelper.java").exists());
+        assertTrue(new File("target/test-stream", GenerationManifest.FILE_NAME).exists());
+        File sub = new File(dir, "sub/TestObject3Jso.java");
+        assertTrue(sub.exists());
+
+        // the pruned class is listed and its overlay from the last run is deleted
+        config.setPruneUnreachable(true);
+        gen.generate();
+        assertTrue(new File(dir, "TestObjectJso.java").exists());
+        assertFalse(sub.exists());
+        assertTrue(FileUtils.fileRead(new File("target/test-stream", JavaScriptOverlayGenerator.UNREACHABLE_REPORT))
+            .contains("com.moesol.test.sub.TestObject3"));
+    }
+
+    @Test
+    public void testCodeTemplate() {
+        String[] patterns = {"", "plain", "%s", "  %s%n  public final %s %s(){%n", "100%% %s%n%n", "%s%s"};
+        Object[] args = {"a", null, 3};
+        for (String pattern : patterns) {
+            StringBuilder sb = new StringBuilder();
+            CodeTemplate.get(pattern).appendTo(sb, args);
+            assertEquals(pattern, String.format(pattern, args), sb.toString());
+        }
+        assertSame(CodeTemplate.get("%s%n"), CodeTemplate.get("%s%n"));
+        try {
+            CodeTemplate.compile("%d");
+            fail("only %s, %n and %% are supported");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testIsolatedClassLoader() throws Exception {
+        config.setOutputDirectory("target/test-isolated");
+        FileUtils.deleteDirectory(new File("target/test-isolated"));
+        URLClassLoader loader = new URLClassLoader(new URL[]{new File("target/test-classes").toURI().toURL()}, null);
+        config.setClassLoader(loader);
+        gen.generate();
+        assertTrue(new File("target/test-isolated/com/moesol/test/TestObjectJso.java").exists());
+        ClassInfo ci = createClassInfos("TestObject").get(0);
+        // loaded without running static initializers, from the loader of the config only
+        assertSame(loader, ci.getOriginalClass().getClassLoader());
+        assertNotSame(TestObject.class, ci.getOriginalClass());
+    }
+
+    @Test
+    public void testModelCache() throws Exception {
+        File dir = new File("target/test-model-cache");
+        FileUtils.deleteDirectory(dir);
+        config.setOutputDirectory("target/test-model-cache/out");
+        config.setModelCacheDirectory("target/test-model-cache/cache");
+        List<ClassInfo> cis = createClassInfos("TestObject", "TestObject2", "Color");
+        gen.writeJso(cis);
+        String expected = FileUtils.fileRead(cis.get(0).getOutputFile());
+
+        // a clean build restores the classes from the cache and generates the same source
+        FileUtils.deleteDirectory(new File(dir, "out"));
+        gen = new JavaScriptOverlayGenerator(config);
+        cis = createClassInfos("TestObject", "TestObject2", "Color");
+        gen.writeJso(cis);
+        assertEquals(expected, FileUtils.fileRead(cis.get(0).getOutputFile()));
+
+        ClassRepository repository = new ClassRepository(getClass().getClassLoader());
+        ClassModel model = repository.get("com.moesol.test.TestObject");
+        ModelCache cache = ModelCache.load(new File(dir, "cache"), config.getFingerprint());
+        assertTrue(cache.getFile().exists());
+        BeanIntrospector introspector = new BeanIntrospector(repository);
+        TypeResolver resolver = new TypeResolver(config, repository);
+        assertTrue(cache.restore(model, repository, introspector, resolver));
+        PropertyTable table = introspector.getProperties(model);
+        PropertyTable introspected = new BeanIntrospector(repository).getProperties(model);
+        TypeResolver fresh = new TypeResolver(config, repository);
+        assertEquals(introspected.size(), table.size());
+        for (int i = 0; i < table.size(); i++) {
+            PropertyModel property = table.get(i);
+            assertEquals(introspected.get(i).getName(), property.getName());
+            if (property.getReadMethod() != null) {
+                assertEquals(describe(fresh.getType(introspected.get(i).getReadMethod())), describe(resolver.getType(property.getReadMethod())));
+            }
+            if (property.getWriteMethod() != null) {
+                assertEquals(describe(fresh.getType(introspected.get(i).getWriteMethod())), describe(resolver.getType(property.getWriteMethod())));
+            }
+        }
+
+        // a changed referenced class file invalidates the entry
+        repository.get("com.moesol.test.TestObject2").setHash("changed");
+        assertFalse(cache.restore(model, repository, new BeanIntrospector(repository), new TypeResolver(config, repository)));
+        // another config has its own file
+        config.setGenerateInterface(true);
+        assertFalse(ModelCache.load(new File(dir, "cache"), config.getFingerprint()).getFile().exists());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        FileUtils.deleteDirectory(new File("target/test-metrics"));
+        config.setOutputDirectory("target/test-metrics/out");
+        config.setMetricsReport("target/test-metrics/metrics.json");
+        gen.writeJso(createClassInfos("TestObject", "TestObject2", "Color"));
+        GenerationMetrics metrics = gen.getMetrics();
+        assertEquals(3, metrics.get(GenerationMetrics.Counter.CLASSES_SCANNED));
+        assertEquals(3, metrics.get(GenerationMetrics.Counter.CLASSES_GENERATED));
+        assertEquals(2, metrics.getCalls(GenerationMetrics.Phase.INTROSPECT));
+        assertEquals(gen.getIntrospector().getProperties("com.moesol.test.TestObject").size()
+            + gen.getIntrospector().getProperties("com.moesol.test.TestObject2").size(),
+            metrics.get(GenerationMetrics.Counter.PROPERTIES_EMITTED));
+        assertEquals(gen.getSourceWriter().getWritten(), metrics.get(GenerationMetrics.Counter.FILES_WRITTEN));
+        assertTrue(metrics.get(GenerationMetrics.Counter.BYTES_WRITTEN) > 0);
+        assertTrue(metrics.getCalls(GenerationMetrics.Phase.RESOLVE) > 0);
+        assertTrue(metrics.getNanos(GenerationMetrics.Phase.RENDER) > 0);
+        String report = FileUtils.fileRead("target/test-metrics/metrics.json");
+        assertTrue(report, report.contains("\"classesScanned\": 3"));
+        assertTrue(report, report.contains("\"resolveTypes\": {\"millis\": "));
+        assertTrue(report, report.contains("{\"name\": \"com.moesol.test.TestObject\", \"millis\": "));
+
+        // the counters start over with each run
+        gen.writeJso(createClassInfos("TestObject", "TestObject2", "Color"));
+        assertEquals(3, metrics.get(GenerationMetrics.Counter.CLASSES_UP_TO_DATE));
+        assertEquals(0, metrics.get(GenerationMetrics.Counter.CLASSES_GENERATED));
+        assertEquals(0, metrics.get(GenerationMetrics.Counter.FILES_WRITTEN));
+    }
+
+    @Test
+    public void testMetricsSummary() throws Exception {
+        GenerationMetrics metrics = new GenerationMetrics();
+        metrics.add(GenerationMetrics.Counter.PROPERTIES_EMITTED, 7);
+        // one line at info, the table only at debug
+        Log log = EasyMock.createStrictMock(Log.class);
+        log.info(EasyMock.matches("Generation took .* ms on 2 threads, 7 properties emitted"));
+        EasyMock.expect(log.isDebugEnabled()).andReturn(false);
+        EasyMock.replay(log);
+        metrics.logSummary(log, 2);
+        EasyMock.verify(log);
+
+        log = EasyMock.createNiceMock(Log.class);
+        log.info(EasyMock.<CharSequence>anyObject());
+        EasyMock.expectLastCall().once();
+        EasyMock.expect(log.isDebugEnabled()).andReturn(true);
+        log.debug(EasyMock.<CharSequence>anyObject());
+        EasyMock.expectLastCall().times(GenerationMetrics.Phase.values().length + GenerationMetrics.Counter.values().length + 2);
+        EasyMock.replay(log);
+        metrics.logSummary(log, 2);
+        EasyMock.verify(log);
+    }
+
+    private static String describe(ReturnType type) {
+        return type.getName() + "," + type.isDate() + "," + type.isList() + "," + type.isArray() + "," + type.isEnum()
+            + "," + type.getParameterType() + "," + type.isParameterTypeEnum() + "," + type.getParameterImplType()
+            + "," + type.getImplName() + "," + type.getInterfaceName() + "," + type.getJsoName()
+            + "," + type.isGenerateInterface() + "," + type.getPrimitiveList();
+    }
+
+    @Test
+    public void testGeneratedClassesAreEvicted() throws Exception {
+        config.setOutputDirectory("target/test-evict");
+        FileUtils.deleteDirectory(new File("target/test-evict"));
+        gen.writeJso(createClassInfos("TestObject", "TestObject2", "Color"));
+        ClassRepository repository = gen.getRepository();
+        String name = "com.moesol.test.TestObject";
+        // only the header is kept, the methods are read again when asked for
+        ClassModel model = repository.get(name);
+        assertNotSame(model, repository.get(name));
+        assertFalse(model.isHeader());
+        assertFalse(model.getMethods().isEmpty());
+        assertEquals(model.getHash(), repository.getHash(name));
+        assertTrue(repository.isEnum("com.moesol.test.Color"));
+        assertEquals("java.lang.Object", repository.getSuperName(name));
+        assertEquals(model.getHash(), ClassFileReader.hash(ClassFileReader.readFully(
+            getClass().getClassLoader().getResourceAsStream("com/moesol/test/TestObject.class"))));
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        config.setOutputDirectory("target/test-incremental");
+        FileUtils.deleteDirectory(new File("target/test-incremental"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "TestObject2", "Color");
+        gen.writeJso(cis);
+        File manifest = new File("target/test-incremental", GenerationManifest.FILE_NAME);
+        assertTrue("Manifest is missing", manifest.exists());
+        File testObject = cis.get(0).getOutputFile();
+        File testObject2 = cis.get(1).getOutputFile();
+        File color = cis.get(2).getOutputFile();
+        for (ClassInfo ci : cis) {
+            assertTrue(ci.getOutputFile().setLastModified(0));
+        }
+
+        // nothing changed, nothing is written
+        gen.writeJso(createClassInfos("TestObject", "TestObject2", "Color"));
+        assertEquals(0, testObject.lastModified());
+        assertEquals(0, testObject2.lastModified());
+        assertEquals(0, color.lastModified());
+
+        // a changed class file is regenerated
+        String text = FileUtils.fileRead(manifest);
+        String hash = gen.getRepository().get("com.moesol.test.TestObject2").getHash();
+        FileUtils.fileWrite(manifest.getPath(), text.replace("TestObject2\t" + hash, "TestObject2\tchanged"));
+        gen.writeJso(createClassInfos("TestObject", "TestObject2", "Color"));
+        assertEquals(0, testObject.lastModified());
+        // the same source is generated again so the file is left alone
+        assertEquals(0, testObject2.lastModified());
+        assertEquals(0, gen.getSourceWriter().getWritten());
+        assertTrue(gen.getSourceWriter().getSkipped() > 0);
+
+        // a deleted output is regenerated
+        assertTrue(color.delete());
+        gen.writeJso(createClassInfos("TestObject", "TestObject2", "Color"));
+        assertTrue(color.exists());
+
+        // classes that are gone have their output removed
+        gen.writeJso(createClassInfos("TestObject2"));
+        assertFalse(testObject.exists());
+        assertFalse(color.exists());
+        assertTrue(testObject2.exists());
+    }
+
+    @Test
+    public void testUnchangedFilesAreNotWritten() throws Exception {
+        config.setOutputDirectory("target/test-unchanged");
+        FileUtils.deleteDirectory(new File("target/test-unchanged"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "TestObject2", "Color");
+        gen.writeJso(cis);
+        assertEquals(0, gen.getSourceWriter().getSkipped());
+        File listHelper = new File(cis.get(0).getOutputFile().getParentFile(), "ListHelper.java");
+        for (ClassInfo ci : cis) {
+            assertTrue(ci.getOutputFile().setLastModified(0));
+        }
+        assertTrue(listHelper.setLastModified(0));
+
+        // without the manifest every class is generated again but nothing is written
+        assertTrue(new File("target/test-unchanged", GenerationManifest.FILE_NAME).delete());
+        gen.writeJso(createClassInfos("TestObject", "TestObject2", "Color"));
+        assertEquals(0, gen.getSourceWriter().getWritten());
+        assertTrue(gen.getSourceWriter().getSkipped() >= 4);
+        for (ClassInfo ci : cis) {
+            assertEquals(0, ci.getOutputFile().lastModified());
+        }
+        assertEquals(0, listHelper.lastModified());
+
+        // a file that differs is written again
+        FileUtils.fileAppend(cis.get(1).getOutputFile().getPath(), "// edited");
+        assertTrue(new File("target/test-unchanged", GenerationManifest.FILE_NAME).delete());
+        gen.writeJso(createClassInfos("TestObject", "TestObject2", "Color"));
+        assertEquals(1, gen.getSourceWriter().getWritten());
+        assertFalse(FileUtils.fileRead(cis.get(1).getOutputFile()).contains("// edited"));
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws Exception {
+        config.setGenerateInterface(true);
+        String[] names = {"TestObject", "TestObject2", "Color", "TestObject$InnerEnum"};
+        config.setThreads(1);
+        config.setOutputDirectory("target/test-sequential");
+        FileUtils.deleteDirectory(new File("target/test-sequential"));
+        gen.writeJso(createClassInfos(names));
+        config.setThreads(4);
+        config.setOutputDirectory("target/test-parallel");
+        FileUtils.deleteDirectory(new File("target/test-parallel"));
+        gen.writeJso(createClassInfos(names));
+        String[] files = new File("target/test-sequential/com/moesol/test").list();
+        assertEquals(12, files.length);
+        for (String file : files) {
+            assertEquals(file, FileUtils.fileRead("target/test-sequential/com/moesol/test/" + file),
+                FileUtils.fileRead("target/test-parallel/com/moesol/test/" + file));
+        }
+    }
+
+    private List<ClassInfo> createClassInfos(String... names) {
+        List<ClassInfo> cis = new ArrayList<ClassInfo>();
+        for (String name : names) {
+            ClassInfo ci = new ClassInfo(config);
+            ci.setClassName(name);
+            ci.setPackageName("com.moesol.test");
+            cis.add(ci);
+        }
+        return cis;
     }
 
     @Test
@@ -166,6 +584,202 @@ public class JavaScriptOverlayGeneratorTest {
         assertTrue("Generated file is missing", ci3.getOutputFile().exists());
     }
 
+    @Test
+    public void testEvalMethods() throws Exception {
+        config.setOutputDirectory("target/test-eval");
+        FileUtils.deleteDirectory(new File("target/test-eval"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "TestObject2");
+        gen.writeJso(cis);
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        assertTrue(text.contains("public static native TestObjectJso evalTestObject(String jsonText) /*-{return JSON.parse(jsonText);}-*/;"));
+        assertTrue(text.contains("evalTestObjectArray(String jsonText) /*-{return JSON.parse(jsonText);}-*/;"));
+        assertFalse(text.contains("eval('('"));
+        assertTrue(text.contains("public static void parseTestObjectArrayIncremental(String jsonText, com.moesol.test.IncrementalParser.Callback<TestObjectJso> callback){"));
+        // only root elements get eval methods
+        assertFalse(FileUtils.fileRead(cis.get(1).getOutputFile()).contains("JSON.parse"));
+        assertFalse(FileUtils.fileRead(cis.get(1).getOutputFile()).contains("Incremental"));
+        File parser = new File(cis.get(0).getOutputDirectory(), "IncrementalParser.java");
+        assertTrue(FileUtils.fileRead(parser).contains("var parse = function(jsonText){return JSON.parse(jsonText);};"));
+
+        // the option changes the fingerprint so everything is generated again
+        config.setLegacyEval(true);
+        gen.writeJso(createClassInfos("TestObject", "TestObject2"));
+        text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        assertFalse(text.contains("JSON.parse"));
+        assertTrue(text.contains("evalTestObject(String jsonText) /*-{return !(/[^,:{}\\[\\]0-9.\\-+Eaeflnr-u \\n\\r\\t]/.test( "
+            + "jsonText.replace(/\"(\\\\.|[^\"\\\\])*\"/g, '')))  && eval('(' + jsonText + ')');}-*/;"));
+        assertFalse(FileUtils.fileRead(parser).contains("JSON.parse"));
+    }
+
+    @Test
+    public void testJsonString() throws Exception {
+        config.setOutputDirectory("target/test-json");
+        FileUtils.deleteDirectory(new File("target/test-json"));
+        List<ClassInfo> cis = createClassInfos("TestObject2");
+        gen.writeJso(cis);
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        assertFalse(text.contains("JSONObject"));
+        assertTrue(text.contains("_getJsonString()/*-{return JSON.stringify(this);}-*/;"));
+        assertTrue(text.contains("return com.moesol.test.JsonHelper.stringify(this, keys, datesAsMillis, _dateSchema());"));
+        assertEquals("return {};", jsniBody(text, "_createDateSchema()").trim());
+        File dir = cis.get(0).getOutputDirectory();
+        assertTrue(FileUtils.fileRead(new File(dir, "ListHelper.java")).contains("return JsonHelper.stringify(array());"));
+        assertTrue(FileUtils.fileRead(new File(dir, "JsonHelper.java")).contains("raw.getTime()"));
+    }
+
+    @Test
+    public void testEnumLookup() throws Exception {
+        config.setOutputDirectory("target/test-enum-lookup");
+        FileUtils.deleteDirectory(new File("target/test-enum-lookup"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "Color");
+        gen.writeJso(cis);
+        String color = FileUtils.fileRead(cis.get(1).getOutputFile());
+        assertTrue(color.contains("public static Color fromName(String name){"));
+        assertTrue(color.contains("throw new IllegalArgumentException(\"No enum constant Color.\" + name);"));
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        assertTrue(text.contains("return com.moesol.test.Color.fromName(_getColor());"));
+        assertFalse(text.contains("valueOf("));
+        assertTrue(text.contains("com.moesol.test.EnumHelper.getView(this, \"colorArray\", data);"));
+        assertTrue(text.contains("new com.moesol.test.EnumListHelper<com.moesol.test.Color>(data, com.moesol.test.Color.lookup());"));
+    }
+
+    @Test
+    public void testPruneUnreachable() throws Exception {
+        config.setOutputDirectory("target/test-prune");
+        FileUtils.deleteDirectory(new File("target/test-prune"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "TestObject2", "Color", "TestObject$InnerEnum");
+        ClassInfo sub = new ClassInfo(config);
+        sub.setClassName("TestObject3");
+        sub.setPackageName("com.moesol.test.sub");
+        cis.add(sub);
+        // TestObject is the @XmlRootElement, it reaches everything but the class in the sub package
+        List<ClassInfo> kept = gen.pruneUnreachable(cis);
+        assertEquals(4, kept.size());
+        assertFalse(kept.contains(sub));
+        String report = FileUtils.fileRead(new File("target/test-prune", JavaScriptOverlayGenerator.UNREACHABLE_REPORT));
+        assertTrue(report.contains("com.moesol.test.sub.TestObject3"));
+        assertFalse(report.contains("com.moesol.test.Color"));
+
+        config.setRootClasses(Arrays.asList("com.moesol.test.TestObject2"));
+        kept = gen.pruneUnreachable(cis);
+        assertEquals(1, kept.size());
+        assertEquals("com.moesol.test.TestObject2", kept.get(0).getOriginalName());
+    }
+
+    @Test
+    public void testEnumArrayFollowsInPlaceChanges() throws Exception {
+        config.setOutputDirectory("target/test-enum-array");
+        FileUtils.deleteDirectory(new File("target/test-enum-array"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "Color");
+        gen.writeJso(cis);
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        String getter = text.substring(text.indexOf("public final com.moesol.test.Color[] getColorArray(){"));
+        getter = getter.substring(0, getter.indexOf("\n  }\n") + 4);
+        // the generated getter, with plain java in place of the javascript object and EnumHelper
+        File dir = cis.get(0).getOutputDirectory();
+        FileUtils.fileWrite(new File(dir, "ColorArrayProbe.java").getPath(), "package com.moesol.test;\n"
+            + "public class ColorArrayProbe{\n"
+            + "  public String[] data;\n"
+            + "  private Object source;\n"
+            + "  private Object view;\n"
+            + "  static Object getView(ColorArrayProbe owner, String property, Object source){\n"
+            + "    return owner.source == source ? owner.view : null;\n  }\n"
+            + "  static void setView(ColorArrayProbe owner, String property, Object source, Object value){\n"
+            + "    owner.source = source;\n    owner.view = value;\n  }\n"
+            + "  public String[] _getColorArray(){\n    return data;\n  }\n"
+            + "  " + getter.replace("com.moesol.test.EnumHelper.", "ColorArrayProbe.") + "\n}\n");
+        int status = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", "target/test-enum-array",
+            new File(dir, "Color.java").getPath(), new File(dir, "ColorArrayProbe.java").getPath());
+        assertEquals(0, status);
+        URLClassLoader loader = new URLClassLoader(new URL[]{new File("target/test-enum-array").toURI().toURL()}, null);
+        Class<?> probeClass = loader.loadClass("com.moesol.test.ColorArrayProbe");
+        Object probe = probeClass.newInstance();
+        String[] data = new String[]{"RED", "BLUE"};
+        probeClass.getField("data").set(probe, data);
+        Method get = probeClass.getMethod("getColorArray");
+        Object[] first = (Object[]) get.invoke(probe);
+        assertEquals("[RED, BLUE]", Arrays.toString(first));
+        // a repeated read returns the same array, an edit of it is undone
+        first[0] = first[1];
+        Object[] second = (Object[]) get.invoke(probe);
+        assertSame(first, second);
+        assertEquals("[RED, BLUE]", Arrays.toString(second));
+        // the javascript array edited in place is read again
+        data[1] = "RED";
+        assertEquals("[RED, RED]", Arrays.toString((Object[]) get.invoke(probe)));
+        // an unknown name fails as Enum.valueOf did
+        data[0] = "PINK";
+        try {
+            get.invoke(probe);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        probeClass.getField("data").set(probe, null);
+        assertNull(get.invoke(probe));
+    }
+
+    @Test
+    public void testEnumListIsCopiedWhenSet() throws Exception {
+        config.setOutputDirectory("target/test-enum-list-copy");
+        FileUtils.deleteDirectory(new File("target/test-enum-list-copy"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "Color");
+        gen.writeJso(cis);
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        assertTrue(text.contains("_setColorList(value == null ? null : com.moesol.test.EnumHelper.names(value));"));
+        String helper = FileUtils.fileRead(new File(cis.get(0).getOutputDirectory(), "EnumHelper.java"));
+        assertTrue(helper.contains("return names == null ? null : copy(names);"));
+        // one overlay's list set on another, then the source list changed
+        ScriptEngine js = new ScriptEngineManager().getEngineByName("JavaScript");
+        js.eval("function copy(names){" + jsniBody(helper, "copy(JsArrayString names)") + "}\n"
+            + "function setColorList(value){" + jsniBody(text, "_setColorList(com.google.gwt.core.client.JsArrayString value )") + "}\n"
+            + "var first = {colorList: ['RED']};\n"
+            + "var second = {};\n"
+            + "setColorList.call(second, copy(first.colorList));\n"
+            + "first.colorList.push('BLUE');\n"
+            + "first.colorList[0] = 'BLUE';");
+        assertEquals("[\"RED\"]", js.eval("JSON.stringify(second.colorList)"));
+        assertEquals(Boolean.FALSE, js.eval("first.colorList === second.colorList"));
+    }
+
+    @Test
+    public void testBulkCopy() throws Exception {
+        config.setTypedLists(true);
+        config.setOutputDirectory("target/test-bulk-copy");
+        FileUtils.deleteDirectory(new File("target/test-bulk-copy"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "Color");
+        gen.writeJso(cis);
+        File dir = cis.get(0).getOutputDirectory();
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        // enum lists store a copy of the javascript array of the view, enum arrays are converted in one pass
+        assertTrue(text.contains("_setColorList(value == null ? null : com.moesol.test.EnumHelper.names(value));"));
+        assertTrue(text.contains("_setColorArray(value == null ? null : com.moesol.test.EnumHelper.names(value, 0, value.length));"));
+        assertFalse(text.contains("new String[value.length"));
+        assertTrue(FileUtils.fileRead(new File(dir, "ListHelper.java")).contains("public void setFrom(T[] source, int from, int to){"));
+        assertTrue(FileUtils.fileRead(new File(dir, "IntegerListHelper.java")).contains("public void copyInto(int[] target, int offset){"));
+        assertTrue(FileUtils.fileRead(new File(dir, "EnumListHelper.java")).contains("public void copyInto(E[] target, int offset){"));
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        config.setOutputDirectory("target/test-create");
+        FileUtils.deleteDirectory(new File("target/test-create"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "Color");
+        gen.writeJso(cis);
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        String create = text.substring(text.indexOf("public static native TestObjectJso create()"));
+        create = create.substring(0, create.indexOf("}-*/;"));
+        // every property, in name order, with a value of the right kind
+        assertTrue(create.contains("\"bool\": false,"));
+        assertTrue(create.contains("\"integer\": 0,"));
+        assertTrue(create.contains("\"list\": [],"));
+        assertTrue(create.contains("\"string\": null,"));
+        assertTrue(create.indexOf("\"bool\"") < create.indexOf("\"color\""));
+        assertTrue(create.indexOf("\"string\"") < create.indexOf("\"xmlDate\""));
+        assertEquals(gen.getIntrospector().getProperties("com.moesol.test.TestObject").size(), create.split("\": ").length - 1);
+        assertFalse(FileUtils.fileRead(cis.get(1).getOutputFile()).contains("create()"));
+    }
+
     @Test
     public void testCompileGenSourceWithInterface() throws Exception {
         config.setOldPackage("com.moesol.test");
@@ -173,12 +787,299 @@ public class JavaScriptOverlayGeneratorTest {
         compile(true, "target/test-compile-interface",
             "Color.java"
             ,"ListHelper.java"
+            ,"JsonHelper.java"
+            ,"EnumHelper.java"
+            ,"EnumListHelper.java"
+            ,"DateHelper.java"
+            ,"IncrementalParser.java"
+            ,"ITestObject.java"
+            ,"TestObjectJso.java"
+            ,"TestObject_InnerEnum.java"
+            ,"ITestObject2.java"
+            ,"TestObject2Jso.java");
+        assertEquals(25, new File("target/test-compile-interface/com/moesol/test/newpackage").list().length);
+    }
+
+    @Test
+    public void testCompileLazyLists() throws Exception {
+        config.setOldPackage("com.moesol.test");
+        config.setNewPackage("com.moesol.test.lazy");
+        config.setLazyLists(true);
+        compile(true, "target/test-compile-lazy",
+            "Color.java"
+            ,"ListHelper.java"
+            ,"JsonHelper.java"
+            ,"EnumHelper.java"
+            ,"EnumListHelper.java"
+            ,"DateHelper.java"
+            ,"IncrementalParser.java"
             ,"ITestObject.java"
             ,"TestObjectJso.java"
             ,"TestObject_InnerEnum.java"
             ,"ITestObject2.java"
             ,"TestObject2Jso.java");
-        assertEquals(14, new File("target/test-compile-interface/com/moesol/test/newpackage").list().length);
+        String text = FileUtils.fileRead("target/test-compile-lazy/com/moesol/test/lazy/TestObjectJso.java");
+        // reading a list never adds it to the object
+        assertFalse(text.contains("new Array()"));
+        assertTrue(text.contains("return new com.moesol.test.lazy.ListHelper<com.moesol.test.lazy.ITestObject2>(this, \"list\", com.moesol.test.lazy.TestObject2Jso._dateSchema());"));
+        assertTrue(text.contains("return new com.moesol.test.lazy.EnumListHelper<com.moesol.test.lazy.Color>(this, \"colorList\", com.moesol.test.lazy.Color.lookup());"));
+    }
+
+    @Test
+    public void testLazyListRoundTrip() throws Exception {
+        config.setLazyLists(true);
+        config.setOutputDirectory("target/test-lazy-round-trip");
+        FileUtils.deleteDirectory(new File("target/test-lazy-round-trip"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "TestObject2", "Color");
+        gen.writeJso(cis);
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        assertTrue(text.contains("_setList(value == null ? null : value.getArray());"));
+        assertTrue(text.contains("return new com.moesol.test.ListHelper<com.moesol.test.TestObject2Jso>(this, \"list\", com.moesol.test.TestObject2Jso._dateSchema());"));
+        String helper = FileUtils.fileRead(new File(cis.get(0).getOutputDirectory(), "ListHelper.java"));
+        assertTrue(helper.contains("return array() == empty ? null : array;"));
+        // set the array of one list on another overlay and read it back through a new view
+        ScriptEngine js = new ScriptEngineManager().getEngineByName("JavaScript");
+        js.eval("var empty = [];\n"
+            + "function setList(value){" + jsniBody(text, "_setList(com.google.gwt.core.client.JavaScriptObject value)") + "}\n"
+            + "function getProperty(owner, property){"
+            + jsniBody(helper, "getProperty(JavaScriptObject owner, String property)")
+                .replace("@com.moesol.test.ListHelper::empty()()", "empty") + "}\n"
+            + "var source = [{string: 'a'}];\n"
+            + "var bean = {};\n"
+            + "setList.call(bean, source);");
+        assertEquals(Boolean.TRUE, js.eval("getProperty(bean, 'list') === source"));
+        assertEquals("[{\"string\":\"a\"}]", js.eval("JSON.stringify(bean.list)"));
+        js.eval("setList.call(bean, null)");
+        assertEquals(Boolean.TRUE, js.eval("getProperty(bean, 'list') === empty"));
+    }
+
+    @Test
+    public void testLazyViewsShareCreatedArray() throws Exception {
+        config.setLazyLists(true);
+        config.setOutputDirectory("target/test-lazy-views");
+        FileUtils.deleteDirectory(new File("target/test-lazy-views"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "TestObject2", "Color");
+        gen.writeJso(cis);
+        String helper = FileUtils.fileRead(new File(cis.get(0).getOutputDirectory(), "ListHelper.java"));
+        // the generated view methods, as javascript on plain arrays
+        ScriptEngine js = new ScriptEngineManager().getEngineByName("JavaScript");
+        js.eval("var empty = Object.freeze([]);\n"
+            + "function getProperty(owner, property){"
+            + jsniBody(helper, "getProperty(JavaScriptObject owner, String property)")
+                .replace("@com.moesol.test.ListHelper::empty()()", "empty") + "}\n"
+            + "function setProperty(owner, property, value){"
+            + jsniBody(helper, "setProperty(JavaScriptObject owner, String property, JavaScriptObject value)") + "}\n"
+            + "function view(owner, property){\n"
+            + "  var array = getProperty(owner, property);\n"
+            + "  function current(){" + viewBody(helper, "JsArray<JavaScriptObject> array()") + "}\n"
+            + "  function writable(){" + viewBody(helper, "JsArray<JavaScriptObject> writable()") + "}\n"
+            + "  return {\n"
+            + "    add: function(obj){" + viewBody(helper, "void add(T obj)") + "},\n"
+            + "    get: function(index){" + viewBody(helper, "T get(int index)") + "},\n"
+            + "    length: function(){" + viewBody(helper, "int length()") + "}\n"
+            + "  };\n"
+            + "}\n"
+            + "var bean = {};\n"
+            + "var first = view(bean, 'list');\n"
+            + "var second = view(bean, 'list');");
+        // two views taken before the first write add to the same array
+        js.eval("first.add('a'); second.add('b');");
+        assertEquals("[\"a\",\"b\"]", js.eval("JSON.stringify(bean.list)"));
+        assertEquals(2, ((Number) js.eval("first.length()")).intValue());
+        assertEquals("b", js.eval("first.get(1)"));
+        // a view that only read sees the array created by another view
+        js.eval("var other = {};\n"
+            + "var reader = view(other, 'list');\n"
+            + "reader.length();\n"
+            + "view(other, 'list').add('c');");
+        assertEquals(1, ((Number) js.eval("reader.length()")).intValue());
+        assertEquals("c", js.eval("reader.get(0)"));
+        assertEquals(0, ((Number) js.eval("empty.length")).intValue());
+    }
+
+    /**
+     * The java body of a generated ListHelper method with this signature, rewritten
+     * as javascript for arrays: array() is current(), casts are dropped
+     */
+    private static String viewBody(String text, String signature) {
+        int start = text.indexOf("{", text.indexOf(signature)) + 1;
+        // the method ends at the first closing brace followed by a blank line
+        return text.substring(start, text.indexOf("}\n\n", start))
+            .replace("(JsArray)JsArray.createArray()", "[]")
+            .replace("(JavaScriptObject)", "")
+            .replace("(T)", "")
+            .replace(".cast()", "")
+            .replace("array()", "current()")
+            .replace(".length()", ".length")
+            .replace(".get(index)", "[index]");
+    }
+
+    @Test
+    public void testCompileTypedLists() throws Exception {
+        config.setOldPackage("com.moesol.test");
+        config.setNewPackage("com.moesol.test.typed");
+        config.setTypedLists(true);
+        compile(true, "target/test-compile-typed",
+            "Color.java"
+            ,"ListHelper.java"
+            ,"JsonHelper.java"
+            ,"StringListHelper.java"
+            ,"IntegerListHelper.java"
+            ,"NumberListHelper.java"
+            ,"BooleanListHelper.java"
+            ,"EnumHelper.java"
+            ,"EnumListHelper.java"
+            ,"DateHelper.java"
+            ,"IncrementalParser.java"
+            ,"ITestObject.java"
+            ,"TestObjectJso.java"
+            ,"TestObject_InnerEnum.java"
+            ,"ITestObject2.java"
+            ,"TestObject2Jso.java");
+        String text = FileUtils.fileRead("target/test-compile-typed/com/moesol/test/typed/TestObjectJso.java");
+        assertTrue(text.contains("public final com.moesol.test.typed.StringListHelper getStringList(){"));
+        assertTrue(text.contains("public final void setStringList(com.moesol.test.typed.StringListHelper value){"));
+        // java arrays are already javascript arrays, they keep their type
+        assertTrue(text.contains("public final native java.lang.String[] getStringArray()"));
+        String iface = FileUtils.fileRead("target/test-compile-typed/com/moesol/test/typed/ITestObject.java");
+        assertTrue(iface.contains("com.moesol.test.typed.StringListHelper getStringList()"));
+        assertTrue(new File("target/test-compile-typed/com/moesol/test/typed/StringListHelper.class").exists());
+    }
+
+    @Test
+    public void testCompileEpochMillisDates() throws Exception {
+        config.setOldPackage("com.moesol.test");
+        config.setNewPackage("com.moesol.test.millis");
+        config.setDateStrategy(Config.DATE_EPOCH_MILLIS);
+        compile(true, "target/test-compile-millis",
+            "Color.java"
+            ,"ListHelper.java"
+            ,"JsonHelper.java"
+            ,"EnumHelper.java"
+            ,"EnumListHelper.java"
+            ,"DateHelper.java"
+            ,"IncrementalParser.java"
+            ,"ITestObject.java"
+            ,"TestObjectJso.java"
+            ,"TestObject_InnerEnum.java"
+            ,"ITestObject2.java"
+            ,"TestObject2Jso.java");
+        String text = FileUtils.fileRead("target/test-compile-millis/com/moesol/test/millis/TestObjectJso.java");
+        assertTrue(text.contains("public final double getXmlDate(){"));
+        assertTrue(text.contains("return com.moesol.test.millis.DateHelper.getMillis(this, \"xmlDate\");"));
+        assertTrue(text.contains("public final void setXmlDate(double value){"));
+        assertTrue(text.contains("com.moesol.test.millis.DateHelper.setMillis(this, \"xmlDate\", value);"));
+        String iface = FileUtils.fileRead("target/test-compile-millis/com/moesol/test/millis/ITestObject.java");
+        assertTrue(iface.contains("double getXmlDate()"));
+    }
+
+    @Test
+    public void testJsonDatesAsMillis() throws Exception {
+        config.setOutputDirectory("target/test-json-dates");
+        FileUtils.deleteDirectory(new File("target/test-json-dates"));
+        List<ClassInfo> cis = createClassInfos("TestObject", "TestObject2", "Color");
+        gen.writeJso(cis);
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        assertTrue(text.contains("return com.moesol.test.JsonHelper.stringify(this, keys, datesAsMillis, _dateSchema());"));
+        assertTrue(text.contains("return new com.moesol.test.ListHelper<com.moesol.test.TestObject2Jso>(_getList(), com.moesol.test.TestObject2Jso._dateSchema());"));
+        String schema = jsniBody(text, "_createDateSchema()");
+        assertTrue(schema.contains("\"xmlDate\": true"));
+        assertTrue(schema.contains("\"testObject2\": function(){return @com.moesol.test.TestObject2Jso::_dateSchema()();}"));
+        assertTrue(schema.contains("\"list\": function(){return @com.moesol.test.TestObject2Jso::_dateSchema()();}"));
+        assertFalse(schema.contains("colorList"));
+        String schema2 = jsniBody(FileUtils.fileRead(cis.get(1).getOutputFile()), "_createDateSchema()");
+        String helper = FileUtils.fileRead(new File(cis.get(0).getOutputDirectory(), "JsonHelper.java"));
+        // run the generated serializer on a bean as it came from the server
+        ScriptEngine js = new ScriptEngineManager().getEngineByName("JavaScript");
+        js.eval("function schema_TestObjectJso(){" + schema.replaceAll("@com\\.moesol\\.test\\.(\\w+)::_dateSchema\\(\\)\\(\\)", "schema_$1()") + "}\n"
+            + "function schema_TestObject2Jso(){" + schema2 + "}\n"
+            + "function stringify(value, keys, datesAsMillis, dateSchema){"
+            + jsniBody(helper, "stringify(JavaScriptObject value, JsArrayString keys, boolean datesAsMillis, JavaScriptObject dateSchema)") + "}\n"
+            + "var bean = {string: 'a', xmlDate: '2011-01-02T03:04:05.000Z'};");
+        assertEquals("{\"string\":\"a\",\"xmlDate\":\"2011-01-02T03:04:05.000Z\"}", js.eval("stringify(bean, null, false, schema_TestObjectJso())"));
+        assertEquals("{\"string\":\"a\",\"xmlDate\":1293937445000}", js.eval("stringify(bean, null, true, schema_TestObjectJso())"));
+        // the DateHelper cache is used while it matches the wire value and is never written
+        js.eval("Object.defineProperty(bean, '$date_xmlDate', {value: {raw: bean.xmlDate, millis: 42}, enumerable: true, writable: true})");
+        assertEquals("{\"string\":\"a\",\"xmlDate\":42}", js.eval("stringify(bean, null, true, schema_TestObjectJso())"));
+        js.eval("bean.xmlDate = '1970-01-01T00:00:01.000Z'");
+        assertEquals("{\"xmlDate\":1000}", js.eval("stringify(bean, ['xmlDate'], true, schema_TestObjectJso())"));
+        // a nested overlay without date properties keeps a string of the same name
+        js.eval("var outer = {testObject2: {name: 'b', xmlDate: '1970-01-01T00:00:02.000Z'}, xmlDate: '1970-01-01T00:00:03.000Z'}");
+        assertEquals("{\"testObject2\":{\"name\":\"b\",\"xmlDate\":\"1970-01-01T00:00:02.000Z\"},\"xmlDate\":3000}",
+            js.eval("stringify(outer, null, true, schema_TestObjectJso())"));
+        // the elements of a list get the schema of their overlay, as ListHelper passes it
+        js.eval("var list = [{xmlDate: '1970-01-01T00:00:04.000Z'}, {string: 'c', xmlDate: '1970-01-01T00:00:05.000Z'}]");
+        assertEquals("[{\"xmlDate\":4000},{\"string\":\"c\",\"xmlDate\":5000}]", js.eval("stringify(list, null, true, schema_TestObjectJso())"));
+        // the dates of nested overlays, also inside arrays, follow their own schema
+        js.eval("var inner = function(){return {when: true};};\n"
+            + "var nested = {inner: {when: '1970-01-01T00:00:06.000Z', name: 'x'}, all: [{when: '1970-01-01T00:00:07.000Z'}], when: 'x'}");
+        assertEquals("{\"inner\":{\"when\":6000,\"name\":\"x\"},\"all\":[{\"when\":7000}],\"when\":\"x\"}",
+            js.eval("stringify(nested, null, true, {inner: inner, all: inner})"));
+        assertEquals("return {};", schema2.trim());
+    }
+
+    /**
+     * The javascript body of the native method with this signature
+     */
+    private static String jsniBody(String text, String signature) {
+        int start = text.indexOf("/*-{", text.indexOf(signature)) + 4;
+        return text.substring(start, text.indexOf("}-*/", start));
+    }
+
+    @Test
+    public void testCompileJsInterop() throws Exception {
+        config.setOldPackage("com.moesol.test");
+        config.setNewPackage("com.moesol.test.jsinterop");
+        config.setOutputMode(Config.OUTPUT_JSINTEROP);
+        compile(false, "target/test-compile-jsinterop",
+            "Color.java",
+            "Json.java",
+            "TestObjectJso.java",
+            "TestObject_InnerEnum.java",
+            "TestObject2Jso.java");
+        File dir = new File("target/test-compile-jsinterop/com/moesol/test/jsinterop");
+        // no JSNI helpers
+        assertFalse(new File(dir, "ListHelper.java").exists());
+        String text = FileUtils.fileRead(new File(dir, "TestObjectJso.java"));
+        assertFalse(text.contains("/*-{"));
+        assertTrue(text.contains("@jsinterop.annotations.JsType(isNative = true, namespace = jsinterop.annotations.JsPackage.GLOBAL, name = \"Object\")"));
+        assertTrue(text.contains("@jsinterop.annotations.JsProperty(name = \"string\")"));
+        assertTrue(text.contains("public com.moesol.test.jsinterop.TestObject2Jso[] list;"));
+        assertTrue(text.contains("public java.lang.String[] stringList;"));
+        assertTrue(text.contains("public final java.util.List<com.moesol.test.jsinterop.Color> getColorList(){"));
+        assertTrue(text.contains("return com.moesol.test.jsinterop.Color.fromName(this.color);"));
+    }
+
+    @Test
+    public void testJsInteropKeywordProperties() throws Exception {
+        config.setOldPackage("com.moesol.test");
+        config.setNewPackage("com.moesol.test.keyword");
+        config.setOutputMode(Config.OUTPUT_JSINTEROP);
+        config.setOutputDirectory("target/test-jsinterop-keyword");
+        FileUtils.deleteDirectory(new File("target/test-jsinterop-keyword"));
+        List<ClassInfo> cis = createClassInfos("KeywordObject", "Color");
+        gen.writeJso(cis);
+        File dir = cis.get(0).getOutputDirectory();
+        String text = FileUtils.fileRead(cis.get(0).getOutputFile());
+        assertTrue(text.contains("@jsinterop.annotations.JsProperty(name = \"default\")\n  public java.lang.String default_;"));
+        assertTrue(text.contains("@jsinterop.annotations.JsProperty(name = \"package\")\n  public java.lang.String package_;"));
+        assertTrue(text.contains("return com.moesol.test.keyword.Color.fromName(this.package_);"));
+        int status = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-cp", System.getProperty("java.class.path"),
+            "-d", "target/test-jsinterop-keyword", new File(dir, "KeywordObjectJso.java").getPath(),
+            new File(dir, "Color.java").getPath(), new File(dir, "Json.java").getPath());
+        assertEquals(0, status);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJsInteropWithInterfaces() throws Exception {
+        config.setOutputMode(Config.OUTPUT_JSINTEROP);
+        config.setGenerateInterface(true);
+        gen.writeJso(createClassInfos("TestObject"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDateStrategy() {
+        config.setDateStrategy("calendar");
     }
 
     @Test
@@ -188,10 +1089,15 @@ public class JavaScriptOverlayGeneratorTest {
         compile(false, "target/test-compile",
             "Color.java", 
             "ListHelper.java",
+            "JsonHelper.java",
+            "EnumHelper.java",
+            "EnumListHelper.java",
+            "DateHelper.java",
+            "IncrementalParser.java",
             "TestObjectJso.java", 
             "TestObject_InnerEnum.java", 
             "TestObject2Jso.java");
-        assertEquals(10, new File("target/test-compile/com/moesol/test").list().length);
+        assertEquals(21, new File("target/test-compile/com/moesol/test").list().length);
     }
 
     @Test
@@ -237,7 +1143,9 @@ public class JavaScriptOverlayGeneratorTest {
     }
 
     private Log createMockLog() {
-        return EasyMock.createNiceMock(Log.class);
+        Log log = EasyMock.createNiceMock(Log.class);
+        EasyMock.replay(log);
+        return log;
     }
 
     private void compile(boolean compile, String outputPath, String... classList) throws IOException, ClassNotFoundException, IntrospectionException {
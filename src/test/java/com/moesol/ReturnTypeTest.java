@@ -29,62 +29,108 @@ public class ReturnTypeTest {
     
     @Test
     public void testLowerFirstChar() {
-        ReturnType returnType = new ReturnType();
-        assertEquals("bob", returnType.getPropertyName("Bob"));
-        assertEquals("BOb", returnType.getPropertyName("BOb"));
-        assertEquals("BOB", returnType.getPropertyName("BOB"));
-        assertEquals("bob", returnType.getPropertyName("bob"));
+        assertEquals("bob", ReturnType.getPropertyName("Bob"));
+        assertEquals("BOb", ReturnType.getPropertyName("BOb"));
+        assertEquals("BOB", ReturnType.getPropertyName("BOB"));
+        assertEquals("bob", ReturnType.getPropertyName("bob"));
     }
     
     @Test
     public void testGetType() throws Exception {
         Config config = new Config();
-        ReturnType.setConfig(config);
+        TypeResolver resolver = new TypeResolver(config, new ClassRepository(getClass().getClassLoader()));
         TestObject to = new TestObject();
         Method stringMethod = to.getClass().getMethod("getString");
-        assertEquals("java.lang.String", ReturnType.getType(stringMethod).getName());
+        assertEquals("java.lang.String", resolver.getType(stringMethod).getName());
         Method intMethod = to.getClass().getMethod("getInteger");
-        assertEquals("int", ReturnType.getType(intMethod).getName());
+        assertEquals("int", resolver.getType(intMethod).getName());
         Method xmlDataMethod = to.getClass().getMethod("getXmlDate");
-        assertTrue(ReturnType.getType(xmlDataMethod).isDate());
-        assertEquals("date", ReturnType.getType(xmlDataMethod).getName());
+        assertTrue(resolver.getType(xmlDataMethod).isDate());
+        assertEquals("date", resolver.getType(xmlDataMethod).getName());
         Method testBool = to.getClass().getMethod("isBool");
-        assertEquals("boolean", ReturnType.getType(testBool).getName());
+        assertEquals("boolean", resolver.getType(testBool).getName());
         Method testObject2Method = to.getClass().getMethod("getTestObject2");
-        assertEquals("com.moesol.test.TestObject2Jso", ReturnType.getType(testObject2Method).getName());
+        assertEquals("com.moesol.test.TestObject2Jso", resolver.getType(testObject2Method).getName());
         Method testObjectListGet = to.getClass().getMethod("getList");
-        assertTrue(ReturnType.getType(testObjectListGet).isList());
-        assertFalse(ReturnType.getType(testObjectListGet).isDate());
-        assertTrue(ReturnType.getType(testObjectListGet).isList());
-        assertEquals("com.moesol.test.TestObject2Jso", ReturnType.getType(testObjectListGet).getParameterType());
+        assertTrue(resolver.getType(testObjectListGet).isList());
+        assertFalse(resolver.getType(testObjectListGet).isDate());
+        assertTrue(resolver.getType(testObjectListGet).isList());
+        assertEquals("com.moesol.test.TestObject2Jso", resolver.getType(testObjectListGet).getParameterType());
         Method testObjectListSet = to.getClass().getMethod("setList", List.class);
-        assertTrue(ReturnType.getType(testObjectListSet).isList());
-        assertEquals("com.moesol.test.TestObject2Jso", ReturnType.getType(testObjectListSet).getParameterType());
+        assertTrue(resolver.getType(testObjectListSet).isList());
+        assertEquals("com.moesol.test.TestObject2Jso", resolver.getType(testObjectListSet).getParameterType());
         Method testIntArray = to.getClass().getMethod("getIntArray");
-        ReturnType type = ReturnType.getType(testIntArray);
+        ReturnType type = resolver.getType(testIntArray);
         assertFalse(type.isList());
         assertTrue(type.isArray());
         assertEquals("int", type.getParameterType());
         Method testObjArray = to.getClass().getMethod("getObjArray");
-        type = ReturnType.getType(testObjArray);
+        type = resolver.getType(testObjArray);
         assertTrue(type.isArray());
         assertFalse(type.isList());
         assertEquals("com.moesol.test.TestObject2Jso", type.getParameterType());
         Method testStringList = to.getClass().getMethod("getStringList");
-        type = ReturnType.getType(testStringList);
+        type = resolver.getType(testStringList);
         assertTrue(type.isArray());
         assertFalse(type.isList());
         assertEquals("java.lang.String", type.getParameterType());
         Method testStringArray = to.getClass().getMethod("getStringArray");
-        type = ReturnType.getType(testStringArray);
+        type = resolver.getType(testStringArray);
         assertTrue(type.isArray());
         assertFalse(type.isList());
+        assertFalse(type.isPrimitiveList());
         assertEquals("java.lang.String", type.getParameterType());
+        // typed lists are a resolver option like the package names
+        config.setTypedLists(true);
+        type = new TypeResolver(config, resolver.getRepository()).getType(testStringList);
+        assertFalse(type.isArray());
+        assertTrue(type.isList());
+        assertSame(PrimitiveList.STRING, type.getPrimitiveList());
+        assertEquals("java.lang.String", type.getParameterType());
+        config.setTypedLists(false);
         config.setOldPackage("com.moesol");
         config.setNewPackage("com.newname");
-        assertEquals("com.newname.test.TestObject2Jso", ReturnType.getType(testObject2Method).getName());
-        assertEquals("com.newname.test.TestObject2Jso", ReturnType.getType(testObjectListSet).getParameterType());
-        assertEquals("com.newname.test.TestObject2Jso", ReturnType.getType(testObjArray).getParameterType());
+        // resolved types are cached for a run, a new config needs a new resolver
+        resolver = new TypeResolver(config, resolver.getRepository());
+        assertEquals("com.newname.test.TestObject2Jso", resolver.getType(testObject2Method).getName());
+        assertEquals("com.newname.test.TestObject2Jso", resolver.getType(testObjectListSet).getParameterType());
+        assertEquals("com.newname.test.TestObject2Jso", resolver.getType(testObjArray).getParameterType());
+    }
+
+    @Test
+    public void testPrimitiveList() {
+        assertSame(PrimitiveList.STRING, PrimitiveList.forElementType("java.lang.String"));
+        assertSame(PrimitiveList.INTEGER, PrimitiveList.forElementType("java.lang.Short"));
+        assertSame(PrimitiveList.NUMBER, PrimitiveList.forElementType("java.lang.Double"));
+        assertSame(PrimitiveList.NUMBER, PrimitiveList.forElementType("java.lang.Long"));
+        assertSame(PrimitiveList.BOOLEAN, PrimitiveList.forElementType("java.lang.Boolean"));
+        assertNull(PrimitiveList.forElementType("java.lang.Object"));
+        assertNull(PrimitiveList.forElementType("com.moesol.test.TestObject2Jso"));
+        ReturnType type = ReturnType.collection("java.lang.Integer", "java.lang.Integer", false, "java.util.List", false);
+        assertTrue(type.isArray());
+        assertFalse(type.isPrimitiveList());
+        type = ReturnType.collection("java.lang.Integer", "java.lang.Integer", false, "java.util.List", true, false);
+        assertTrue(type.isList());
+        assertEquals("com.google.gwt.core.client.JsArrayInteger", type.getPrimitiveList().getQualifiedArrayName());
+        assertEquals("int", type.getPrimitiveList().getValueType());
+    }
+
+    @Test
+    public void testGetTypeIsCached() throws Exception {
+        Config config = new Config();
+        config.setGenerateInterface(true);
+        TypeResolver resolver = new TypeResolver(config, new ClassRepository(getClass().getClassLoader()));
+        Method getter = TestObject.class.getMethod("getList");
+        Method setter = TestObject.class.getMethod("setList", List.class);
+        ReturnType type = resolver.getType(getter);
+        assertSame(type, resolver.getType(setter));
+        assertEquals("com.moesol.test.ITestObject2", type.getInterfaceName());
+        assertEquals("com.moesol.test.TestObject2Jso", type.getJsoName());
+        assertEquals("com.moesol.test.ITestObject2", type.getParameterType());
+        assertNotSame(type, resolver.getType(TestObject.class.getMethod("getObjArray")));
+        type = resolver.getType(TestObject.class.getMethod("getColor"));
+        assertEquals("com.moesol.test.Color", type.getInterfaceName());
+        assertEquals("com.moesol.test.Color", type.getJsoName());
     }
 
 }